@@ -0,0 +1,649 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/** A benchmarking class whose main program may be invoked as follows:
+ *      java gitlet.Bench NAME...
+ *  where each NAME selects one of the benchmarks below. Each benchmark
+ *  prints one line per case with the measured throughput or latency.
+ *  Timings are wall-clock, taken after a warm-up pass, and are meant for
+ *  comparing alternatives on one machine rather than as absolute numbers.
+ *  @author Ethan Brown
+ */
+public class Bench {
+
+    /** Number of timed repetitions of each case. */
+    private static final int ROUNDS = 5;
+    /** Number of untimed rounds run by opLatency before timing any. */
+    private static final int WARMUP_ROUNDS = 5;
+    /** Least nanoseconds taken by each round of opLatency. */
+    private static final long ROUND_NANOS = 100_000_000;
+    /** Size in bytes of the payloads used by the codec benchmark. */
+    private static final int PAYLOAD_SIZE = 16 << 20;
+    /** Bytes per mebibyte. */
+    private static final double MIB = 1 << 20;
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+    /** Object counts compared by the objects benchmark. */
+    private static final int[] OBJECT_COUNTS = { 1000, 10000, 100000 };
+    /** Number of lookups timed by the objects benchmark. */
+    private static final int LOOKUPS = 10000;
+    /** Numbers of files in the file lists compared by the serial
+     *  benchmark. */
+    private static final int[] COMMIT_SIZES = { 10, 1000, 100000 };
+    /** Size in bytes of the blob compared by the serial benchmark. */
+    private static final int BLOB_SIZE = 4 << 10;
+    /** Nanoseconds per microsecond. */
+    private static final double NANOS_PER_US = 1e3;
+    /** Commands whose startup latency the startup benchmark measures,
+     *  each run as a new process. */
+    private static final String[][] STARTUP_COMMANDS = {
+        { "gitlet.Bench" },
+        { "gitlet.Main", "log", "-n", "0" },
+        { "gitlet.Main", "status" },
+    };
+    /** Number of files added and committed by each run of the durability
+     *  benchmark. */
+    private static final int DURABLE_FILES = 100;
+    /** Number of processes committing at once in the stress test. */
+    private static final int STRESS_WRITERS = 3;
+    /** Number of processes reading at once in the stress test. */
+    private static final int STRESS_READERS = 2;
+    /** Number of commits attempted by each writer of the stress test. */
+    private static final int STRESS_ROUNDS = 5;
+    /** Read-only commands run in turn by each reader of the stress
+     *  test. */
+    private static final String[][] STRESS_READS = {
+        { "gitlet.Main", "log" },
+        { "gitlet.Main", "status" },
+        { "gitlet.Main", "global-log" },
+    };
+    /** Milliseconds a writer of the stress test waits for a lock that is
+     *  never released. */
+    private static final long LOCK_WAIT = 500;
+    /** Numbers of lines of the texts merged by the merge benchmark. */
+    private static final int[] MERGE_SIZES = { 10000, 100000, 1000000 };
+    /** Lines between the edits of each side in the merge benchmark. */
+    private static final int EDIT_SPACING = 1000;
+    /** Every this many lines, a text of the merge benchmark repeats a
+     *  line, as code repeats its closing braces. */
+    private static final int REPEAT_SPACING = 7;
+    /** Fraction of the lines that the "moved" case of the merge
+     *  benchmark moves to the end of their side. */
+    private static final int MOVED_FRACTION = 10;
+
+    /** Runs the benchmarks named in NAMES. */
+    public static void main(String... names) {
+        if (names.length == 0) {
+            System.out.println("Usage: java gitlet.Bench "
+                               + "[codec] [objects] [serial] [startup] "
+                               + "[durability] [stress] [merge]");
+            return;
+        }
+        for (String name : names) {
+            if (name.equals("codec")) {
+                codec();
+            } else if (name.equals("objects")) {
+                objects();
+            } else if (name.equals("serial")) {
+                serial();
+            } else if (name.equals("startup")) {
+                startup();
+            } else if (name.equals("durability")) {
+                durability();
+            } else if (name.equals("stress")) {
+                stress();
+            } else if (name.equals("merge")) {
+                merge();
+            } else {
+                System.out.println("Unknown benchmark " + name + ".");
+            }
+        }
+    }
+
+    /** Measures write and read throughput of each object codec against
+     *  writing the same bytes to disk uncompressed, on a text-like and on
+     *  a random payload. */
+    static void codec() {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < PAYLOAD_SIZE) {
+            text.append("line ").append(random.nextInt(1 << 10))
+                .append(": the quick brown fox jumps over the lazy dog\n");
+        }
+        byte[] noise = new byte[PAYLOAD_SIZE];
+        random.nextBytes(noise);
+        byte[][] payloads = {
+            text.toString().getBytes(StandardCharsets.UTF_8), noise,
+        };
+        String[] labels = { "text", "random" };
+        File dir = tempDir();
+        System.out.printf("%-8s %-8s %10s %10s %8s%n",
+                          "payload", "codec", "write MB/s", "read MB/s",
+                          "ratio");
+        for (int p = 0; p < payloads.length; p += 1) {
+            byte[] data = payloads[p];
+            File f = new File(dir, "raw");
+            double write = throughput(data.length, () ->
+                Utils.writeContents(f, data));
+            double read = throughput(data.length, () ->
+                Utils.readContents(f));
+            System.out.printf("%-8s %-8s %10.1f %10.1f %8.2f%n",
+                              labels[p], "raw", write, read, 1.0);
+            for (Codec c : Codec.ALL) {
+                File g = new File(dir, c.name());
+                write = throughput(data.length, () ->
+                    Utils.writeContents(g, Codec.encode(c, ObjectStore.BLOB,
+                                                        data)));
+                read = throughput(data.length, () ->
+                    Codec.decode(Utils.readContents(g)));
+                System.out.printf("%-8s %-8s %10.1f %10.1f %8.2f%n",
+                                  labels[p], c.name(), write, read,
+                                  (double) data.length / g.length());
+            }
+        }
+        Utils.deleteTree(dir);
+    }
+
+    /** Measures the cost of looking up loose objects, present and
+     *  absent, and of listing them all, in the flat layout of older
+     *  repositories and in the sharded layout of ObjectStore, as the
+     *  number of objects grows. The objects are empty files, so that only
+     *  directory operations are timed. */
+    static void objects() {
+        System.out.printf("%-8s %8s %12s %12s %10s%n", "layout", "objects",
+                          "hit ns", "miss ns", "list ms");
+        for (int n : OBJECT_COUNTS) {
+            String[] present = new String[n];
+            String[] absent = new String[LOOKUPS];
+            for (int i = 0; i < n; i += 1) {
+                present[i] = Utils.sha1("present " + i);
+            }
+            for (int i = 0; i < LOOKUPS; i += 1) {
+                absent[i] = Utils.sha1("absent " + i);
+            }
+            for (boolean sharded : new boolean[] { false, true }) {
+                File dir = tempDir();
+                for (String id : present) {
+                    File f = objectFile(dir, id, sharded);
+                    f.getParentFile().mkdir();
+                    Utils.writeContents(f, new byte[0]);
+                }
+                Random random = new Random(n);
+                double hit = latency(LOOKUPS, () -> {
+                    for (int i = 0; i < LOOKUPS; i += 1) {
+                        String id = present[random.nextInt(n)];
+                        objectFile(dir, id, sharded).exists();
+                    }
+                });
+                double miss = latency(LOOKUPS, () -> {
+                    for (int i = 0; i < LOOKUPS; i += 1) {
+                        String id = absent[random.nextInt(LOOKUPS)];
+                        objectFile(dir, id, sharded).exists();
+                    }
+                });
+                double list = latency(1, () -> listObjects(dir, sharded));
+                System.out.printf("%-8s %8d %12.0f %12.0f %10.1f%n",
+                                  sharded ? "sharded" : "flat", n, hit,
+                                  miss, list / NANOS_PER_MS);
+                Utils.deleteTree(dir);
+            }
+        }
+    }
+
+    /** Measures the time to encode and decode the file lists of commits
+     *  of growing size, a commit and a small blob, and the size of the
+     *  result, with Java serialization, as older repositories stored
+     *  them, and with the binary encodings used by ObjectStore: a Tree
+     *  for a file list, the commit encoding and raw contents for a blob.
+     *  The files of each list share one directory, so that a single Tree
+     *  holds them all. Each time is per operation, as by opLatency. */
+    static void serial() {
+        System.out.printf("%-8s %8s %-8s %12s %12s %10s%n", "object",
+                          "files", "format", "encode us", "decode us",
+                          "bytes");
+        for (int n : COMMIT_SIZES) {
+            HashMap<String, String> contents = new HashMap<>();
+            TreeMap<String, String> entries = new TreeMap<>();
+            for (int i = 0; i < n; i += 1) {
+                String id = Utils.sha1("file " + i);
+                contents.put("file" + i + ".txt", id);
+                entries.put("file" + i + ".txt", id);
+            }
+            Tree tree = new Tree(entries);
+            byte[] serialized = Utils.serialize(contents);
+            byte[] encoded = tree.encode();
+            double[] times = {
+                opLatency(() -> Utils.serialize(contents)),
+                opLatency(() -> Utils.deserialize(serialized,
+                                                  HashMap.class)),
+                opLatency(() -> tree.encode()),
+                opLatency(() -> Tree.decode(encoded)),
+            };
+            System.out.printf("%-8s %8d %-8s %12.3f %12.3f %10d%n",
+                              "files", n, "java", times[0] / NANOS_PER_US,
+                              times[1] / NANOS_PER_US, serialized.length);
+            System.out.printf("%-8s %8d %-8s %12.3f %12.3f %10d%n",
+                              "files", n, "binary",
+                              times[2] / NANOS_PER_US,
+                              times[3] / NANOS_PER_US, encoded.length);
+        }
+        Commit c = new Commit("A commit message", new Date(0),
+                              Utils.sha1("parent"), null,
+                              Utils.sha1("tree"));
+        byte[] javaCommit = Utils.serialize(c);
+        byte[] encodedCommit = c.encode();
+        double[] commitTimes = {
+            opLatency(() -> Utils.serialize(c)),
+            opLatency(() -> Utils.deserialize(javaCommit, Commit.class)),
+            opLatency(() -> c.encode()),
+            opLatency(() -> Commit.decode(encodedCommit)),
+        };
+        System.out.printf("%-8s %8d %-8s %12.3f %12.3f %10d%n", "commit",
+                          1, "java", commitTimes[0] / NANOS_PER_US,
+                          commitTimes[1] / NANOS_PER_US, javaCommit.length);
+        System.out.printf("%-8s %8d %-8s %12.3f %12.3f %10d%n", "commit",
+                          1, "binary", commitTimes[2] / NANOS_PER_US,
+                          commitTimes[3] / NANOS_PER_US,
+                          encodedCommit.length);
+        byte[] data = new byte[BLOB_SIZE];
+        new Random(0).nextBytes(data);
+        Blob b = new Blob("file.txt", data);
+        byte[] serialized = Utils.serialize(b);
+        Codec none = Codec.ALL[Codec.NONE];
+        byte[] raw = Codec.encode(none, ObjectStore.RAW, data);
+        double[] times = {
+            opLatency(() -> Utils.serialize(b)),
+            opLatency(() -> Utils.deserialize(serialized, Blob.class)),
+            opLatency(() -> Codec.encode(none, ObjectStore.RAW, data)),
+            opLatency(() -> new Blob("", Codec.decode(raw))),
+        };
+        System.out.printf("%-8s %8d %-8s %12.3f %12.3f %10d%n", "blob", 1,
+                          "java", times[0] / NANOS_PER_US,
+                          times[1] / NANOS_PER_US, serialized.length);
+        System.out.printf("%-8s %8d %-8s %12.3f %12.3f %10d%n", "blob", 1,
+                          "binary", times[2] / NANOS_PER_US,
+                          times[3] / NANOS_PER_US, raw.length);
+    }
+
+    /** Measures the wall-clock latency of starting a new JVM to run each
+     *  of STARTUP_COMMANDS in a freshly initialized repository, with the
+     *  daemon not running. The first, which only prints a usage line, is
+     *  the cost of the JVM itself; the difference from it is what gitlet
+     *  spends reading the repository's state before doing any work. */
+    static void startup() {
+        File dir = tempDir();
+        try {
+            run(dir, "gitlet.Main", "init");
+            System.out.printf("%-24s %10s%n", "command", "ms");
+            for (String[] command : STARTUP_COMMANDS) {
+                double time = latency(1, () -> run(dir, command));
+                System.out.printf("%-24s %10.1f%n",
+                                  String.join(" ", command),
+                                  time / NANOS_PER_MS);
+            }
+        } finally {
+            Utils.deleteTree(dir);
+        }
+    }
+
+    /** Measures the latency of adding DURABLE_FILES changed files with
+     *  one add command and committing them, each command in a new JVM,
+     *  under each setting of Transaction.FSYNC_PROPERTY: no syncing, one
+     *  sync of each file as it is written, and grouped syncs. */
+    static void durability() {
+        System.out.printf("%-8s %12s%n", "fsync", "add+commit ms");
+        String[] modes = {
+            Transaction.NONE, Transaction.EACH, Transaction.GROUP,
+        };
+        for (String mode : modes) {
+            File dir = tempDir();
+            try {
+                List<String> options =
+                    List.of("-D" + Transaction.FSYNC_PROPERTY + "=" + mode);
+                run(dir, options, "gitlet.Main", "init");
+                String[] add = new String[DURABLE_FILES + 2];
+                add[0] = "gitlet.Main";
+                add[1] = "add";
+                for (int i = 0; i < DURABLE_FILES; i += 1) {
+                    add[i + 2] = "file" + i + ".txt";
+                }
+                int[] round = { 0 };
+                double time = latency(1, () -> {
+                    round[0] += 1;
+                    for (int i = 0; i < DURABLE_FILES; i += 1) {
+                        Utils.writeContents(new File(dir, add[i + 2]),
+                                            "round " + round[0]
+                                            + " file " + i);
+                    }
+                    run(dir, options, add);
+                    run(dir, options, "gitlet.Main", "commit",
+                        "round " + round[0]);
+                });
+                System.out.printf("%-8s %12.1f%n", mode,
+                                  time / NANOS_PER_MS);
+            } finally {
+                Utils.deleteTree(dir);
+            }
+        }
+    }
+
+    /** Runs STRESS_WRITERS processes that each add and commit a file of
+     *  their own STRESS_ROUNDS times, all on one branch, alongside
+     *  STRESS_READERS processes running STRESS_READS in a loop, then
+     *  checks that no command failed and that every commit reported as
+     *  made is on the branch. Prints the latency of the readers while
+     *  the writers run against their latency in an idle repository:
+     *  since readers take no lock, the two should be close. */
+    static void stress() {
+        File dir = tempDir();
+        try {
+            stress(dir);
+        } finally {
+            Utils.deleteTree(dir);
+        }
+    }
+
+    /** Runs the stress test in a repository made in the empty directory
+     *  DIR. */
+    private static void stress(File dir) {
+        run(dir, "gitlet.Main", "init");
+        double idle = latency(1, () -> {
+            for (String[] read : STRESS_READS) {
+                output(dir, read);
+            }
+        }) / STRESS_READS.length;
+        AtomicInteger commits = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Long> reads = Collections.synchronizedList(new ArrayList<>());
+        ArrayList<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < STRESS_WRITERS; w += 1) {
+            String file = "writer" + w + ".txt";
+            writers.add(new Thread(() -> {
+                for (int r = 0; r < STRESS_ROUNDS; r += 1) {
+                    Utils.writeContents(new File(dir, file), file + r);
+                    String out = output(dir, "gitlet.Main", "add", file)
+                        + output(dir, "gitlet.Main", "commit", file + r);
+                    if (out.isEmpty()) {
+                        commits.incrementAndGet();
+                    } else if (!out.startsWith("No changes")) {
+                        failures.incrementAndGet();
+                        System.out.print(out);
+                    }
+                }
+            }));
+        }
+        ArrayList<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < STRESS_READERS; i += 1) {
+            readers.add(new Thread(() -> {
+                for (int k = 0; writing.get(); k += 1) {
+                    long start = System.nanoTime();
+                    String out = output(dir,
+                                        STRESS_READS[k % STRESS_READS.length]);
+                    reads.add(System.nanoTime() - start);
+                    if (out.contains("Exception")) {
+                        failures.incrementAndGet();
+                        System.out.print(out);
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        readers.forEach(Thread::start);
+        join(writers);
+        writing.set(false);
+        join(readers);
+        String log = output(dir, "gitlet.Main", "log");
+        int logged = log.split("===", -1).length - 1;
+        long max = Collections.max(reads);
+        double mean = reads.stream().mapToLong(x -> x).average().orElse(0);
+        System.out.printf("%-26s %10.1f%n", "idle read ms", idle
+                          / NANOS_PER_MS);
+        System.out.printf("%-26s %10.1f%n", "read ms under writers",
+                          mean / NANOS_PER_MS);
+        System.out.printf("%-26s %10.1f%n", "max read ms under writers",
+                          max / NANOS_PER_MS);
+        System.out.printf("%-26s %10d%n", "reads", reads.size());
+        System.out.printf("%-26s %10d%n", "commits made", commits.get());
+        System.out.printf("%-26s %10d%n", "commits lost",
+                          commits.get() + 1 - logged);
+        System.out.printf("%-26s %10d%n", "failed commands", failures.get());
+        File lockFile = new File(dir, RepoLock.LOCK_FILE);
+        try (FileChannel ch = FileChannel.open(lockFile.toPath(),
+                                               StandardOpenOption.WRITE)) {
+            ch.lock();
+            double held = latency(1, () -> output(dir, "gitlet.Main", "log"));
+            System.out.printf("%-26s %10.1f%n", "read ms with lock held",
+                              held / NANOS_PER_MS);
+            List<String> options =
+                List.of("-D" + RepoLock.TIMEOUT_PROPERTY + "=" + LOCK_WAIT);
+            long start = System.nanoTime();
+            run(dir, options, "gitlet.Main", "branch", "blocked");
+            System.out.printf("%-26s %10.1f%n", "write ms with lock held",
+                              (System.nanoTime() - start) / NANOS_PER_MS);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (output(dir, "gitlet.Main", "status").contains("blocked")) {
+            System.out.println("A writer ran while the lock was held.");
+        }
+    }
+
+    /** Measures the time of a three-way merge of texts of each of
+     *  MERGE_SIZES lines, where each side edits a line every EDIT_SPACING
+     *  lines: in different places ("clean"), in the same places
+     *  ("overlap"), or with their side also moving a block of the text
+     *  to its end ("moved"), which makes the diff's hardest case. */
+    static void merge() {
+        System.out.printf("%-8s %10s %10s %10s %10s%n", "case", "lines",
+                          "ms", "ns/line", "conflicts");
+        for (int n : MERGE_SIZES) {
+            List<String> base = new ArrayList<>();
+            for (int i = 0; i < n; i += 1) {
+                base.add(i % REPEAT_SPACING == 0 ? "    }\n"
+                         : "line " + i + " of the base text\n");
+            }
+            List<String> ours = new ArrayList<>(base);
+            List<String> theirs = new ArrayList<>(base);
+            List<String> overlap = new ArrayList<>(base);
+            for (int i = 1; i < n; i += EDIT_SPACING) {
+                ours.set(i, "our edit of line " + i + "\n");
+                theirs.set(i + EDIT_SPACING / 2,
+                           "their edit of line " + i + "\n");
+                overlap.set(i, "their edit of line " + i + "\n");
+            }
+            List<String> moved = new ArrayList<>(theirs);
+            List<String> block = moved.subList(n / 2,
+                                               n / 2 + n / MOVED_FRACTION);
+            List<String> tail = new ArrayList<>(block);
+            block.clear();
+            moved.addAll(tail);
+            String[] names = { "clean", "overlap", "moved" };
+            List<List<String>> others = List.of(theirs, overlap, moved);
+            byte[] o = concat(base);
+            byte[] a = concat(ours);
+            for (int c = 0; c < names.length; c += 1) {
+                byte[] b = concat(others.get(c));
+                double time = latency(1, () ->
+                    new ThreeWayMerge(o, a, b, "theirs"));
+                System.out.printf("%-8s %10d %10.1f %10.1f %10d%n",
+                                  names[c], n, time / NANOS_PER_MS,
+                                  time / n, new ThreeWayMerge(o, a, b,
+                                  "theirs").conflicts());
+            }
+        }
+    }
+
+    /** Returns the bytes of LINES, one after another. */
+    private static byte[] concat(List<String> lines) {
+        return String.join("", lines).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Waits for each of THREADS to finish. */
+    private static void join(List<Thread> threads) {
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** As for run(DIR, ARGS), but returns what the program printed on
+     *  its standard output and error. */
+    private static String output(File dir, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin",
+                              "java").toString());
+        command.add("-cp");
+        command.add(new File(System.getProperty("java.class.path"))
+                    .getAbsolutePath());
+        command.addAll(Arrays.asList(args));
+        try {
+            Process p = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true).start();
+            String out = new String(p.getInputStream().readAllBytes(),
+                                    StandardCharsets.UTF_8);
+            p.waitFor();
+            return out;
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Runs the main program of class ARGS[0] with the remaining ARGS in
+     *  a new JVM whose working directory is DIR, discarding its output,
+     *  and waits for it to exit. */
+    private static void run(File dir, String... args) {
+        run(dir, List.of(), args);
+    }
+
+    /** As for run(DIR, ARGS), passing the JVM OPTIONS. */
+    private static void run(File dir, List<String> options,
+                            String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin",
+                              "java").toString());
+        command.addAll(options);
+        command.add("-cp");
+        command.add(new File(System.getProperty("java.class.path"))
+                    .getAbsolutePath());
+        command.addAll(Arrays.asList(args));
+        try {
+            new ProcessBuilder(command).directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start().waitFor();
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the file of object ID under DIR, in the sharded layout if
+     *  SHARDED and in the flat one otherwise. */
+    private static File objectFile(File dir, String id, boolean sharded) {
+        return new File(dir, sharded ? ObjectStore.shardPath(id) : id);
+    }
+
+    /** Returns the number of objects under DIR, in the sharded layout if
+     *  SHARDED and in the flat one otherwise. */
+    private static int listObjects(File dir, boolean sharded) {
+        String[] names = dir.list();
+        if (!sharded) {
+            return names.length;
+        }
+        int count = 0;
+        for (String name : names) {
+            count += new File(dir, name).list().length;
+        }
+        return count;
+    }
+
+    /** Returns the mean latency in nanoseconds of one of the OPS
+     *  operations performed by each run of BODY, averaged over ROUNDS
+     *  runs after one warm-up run. */
+    static double latency(int ops, Runnable body) {
+        body.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            body.run();
+        }
+        return (double) (System.nanoTime() - start) / ROUNDS / ops;
+    }
+
+    /** Returns the mean latency in nanoseconds of one run of OP. OP is
+     *  repeated as often as it takes for a round to last ROUND_NANOS, so
+     *  that even operations of a microsecond or less are timed over
+     *  thousands of runs, far above the timer's resolution; WARMUP_ROUNDS
+     *  untimed rounds let the JIT compile it first, and the mean is taken
+     *  over ROUNDS timed rounds. OP's results are kept, so that its work
+     *  cannot be optimized away. */
+    static double opLatency(Supplier<?> op) {
+        int reps = 1;
+        while (repeat(reps, op) < ROUND_NANOS) {
+            reps *= 2;
+        }
+        for (int i = 0; i < WARMUP_ROUNDS; i += 1) {
+            repeat(reps, op);
+        }
+        long total = 0;
+        for (int i = 0; i < ROUNDS; i += 1) {
+            total += repeat(reps, op);
+        }
+        return (double) total / ROUNDS / reps;
+    }
+
+    /** Runs OP REPS times, and returns the nanoseconds taken. */
+    private static long repeat(int reps, Supplier<?> op) {
+        long start = System.nanoTime();
+        for (int i = 0; i < reps; i += 1) {
+            sink = op.get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** Returns the throughput in MiB/s of running BODY, which processes
+     *  BYTES bytes, averaged over ROUNDS runs after one warm-up run. */
+    static double throughput(long bytes, Runnable body) {
+        body.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            body.run();
+        }
+        double seconds = (System.nanoTime() - start) / NANOS;
+        return bytes * ROUNDS / MIB / seconds;
+    }
+
+    /** Returns a new, empty temporary directory. */
+    static File tempDir() {
+        try {
+            return Files.createTempDirectory("gitlet-bench").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The result of the last operation timed by opLatency. */
+    private static volatile Object sink;
+}
@@ -1,19 +1,36 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /** Class used to serialize and keep track of the contents of FILE.
  * @author Ethan Brown
  */
 public class Blob implements Serializable {
 
+    /** Version of serialized blobs, as computed for the original class,
+     *  so that blobs of older repositories stay readable. */
+    private static final long serialVersionUID = -2151310785285006627L;
+    /** Size in bytes of the buffer used when streaming file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
     /** Instantiates an instance of blob class based on file F. */
     Blob(File f) {
-        String fContentsString = Utils.readContentsAsString(f);
-        contents = fContentsString.getBytes();
+        contents = Utils.readContents(f);
         name = f.getName();
     }
+    /** Instantiates a blob for the file named NAME holding CONTENTS. */
+    Blob(String name, byte[] contents) {
+        this.name = name;
+        this.contents = contents;
+    }
     /** Method which returns STRING of this instances name value. */
     String getName() {
         return this.name;
@@ -22,6 +39,34 @@ public class Blob implements Serializable {
     byte[] getContents() {
         return this.contents;
     }
+    /** Returns the content ID of this blob. It only depends on the raw
+     *  bytes of the file, never on how the blob happens to be stored. */
+    String getID() {
+        return Utils.sha1(header(contents.length), contents);
+    }
+    /** Returns the content ID of the file F, computed by streaming its raw
+     *  bytes through a fixed size buffer so that memory use does not
+     *  depend on the size of F. Agrees with getID() for the same bytes. */
+    static String hash(File f) {
+        try (InputStream in = Files.newInputStream(f.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(header(f.length()));
+            DigestInputStream din = new DigestInputStream(in, md);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (din.read(buffer) != -1) {
+                continue;
+            }
+            return Utils.toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+    /** Returns the header hashed in front of a blob of SIZE bytes. */
+    static byte[] header(long size) {
+        return ("blob " + size + "\0").getBytes(StandardCharsets.UTF_8);
+    }
     /** Private STRING representing this instances name. */
     private String name;
     /** Private BYTE[] representing this instances contents. */
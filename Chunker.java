@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Splits a stream into content-defined chunks. A gear hash rolls over
+ *  the bytes after the first MIN_SIZE of each chunk, and the chunk ends
+ *  after the first byte at which the top AVERAGE_BITS bits of the hash
+ *  are all zero, or after MAX_SIZE bytes. Since each bit of the hash
+ *  only depends on the last 64 bytes read, boundaries move with the
+ *  content: inserting or deleting bytes changes only the chunks around
+ *  the edit, and the rest of a file splits as it did before. Chunks
+ *  average about 64 KiB.
+ *  @author Ethan Brown
+ */
+class Chunker {
+
+    /** Smallest chunk, other than the last chunk of a stream. */
+    static final int MIN_SIZE = 1 << 15;
+    /** Number of hash bits that must be zero at a boundary. Past
+     *  MIN_SIZE, a boundary is expected every 2^AVERAGE_BITS bytes. */
+    static final int AVERAGE_BITS = 15;
+    /** Largest chunk. */
+    static final int MAX_SIZE = 1 << 18;
+    /** Bits of the hash tested for a boundary. */
+    private static final long MASK =
+        ((1L << AVERAGE_BITS) - 1) << (Long.SIZE - AVERAGE_BITS);
+    /** Seed of the gear table. Changing it moves every boundary, and so
+     *  stops new chunks being shared with old ones. */
+    private static final long SEED = 0x6769746c6574L;
+    /** Number of distinct byte values. */
+    private static final int BYTE_VALUES = 256;
+    /** Random value mixed into the hash for each byte value. */
+    private static final long[] GEAR = new long[BYTE_VALUES];
+
+    static {
+        Random random = new Random(SEED);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** A chunker splitting the bytes of IN. */
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Returns the next chunk of the stream, or null if it is
+     *  exhausted. */
+    byte[] next() {
+        try {
+            while (limit < buffer.length) {
+                int n = in.read(buffer, limit, buffer.length - limit);
+                if (n == -1) {
+                    break;
+                }
+                limit += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (limit == 0) {
+            return null;
+        }
+        int cut = cutPoint(buffer, limit);
+        byte[] result = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, limit - cut);
+        limit -= cut;
+        return result;
+    }
+
+    /** Returns the length of the chunk starting the first N bytes of
+     *  DATA, where N is at most MAX_SIZE and less than MAX_SIZE only at
+     *  the end of the stream. */
+    static int cutPoint(byte[] data, int n) {
+        long hash = 0;
+        for (int i = MIN_SIZE; i < n; i += 1) {
+            hash = (hash << 1) + GEAR[data[i] & (BYTE_VALUES - 1)];
+            if ((hash & MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** The stream being split. */
+    private final InputStream in;
+    /** Bytes read from the stream but not yet returned. */
+    private final byte[] buffer = new byte[MAX_SIZE];
+    /** Number of bytes held in BUFFER. */
+    private int limit;
+}
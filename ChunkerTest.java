@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of content-defined chunking.
+ *  @author Ethan Brown
+ */
+public class ChunkerTest {
+
+    /** The chunks of a stream make it up in order, and all but the last
+     *  are between MIN_SIZE and MAX_SIZE bytes. */
+    @Test
+    public void boundsTest() {
+        byte[] data = randomBytes(new Random(SEED), SIZE);
+        List<byte[]> chunks = chunks(data);
+        assertTrue(chunks.size() > 1);
+        int n = 0;
+        for (int i = 0; i < chunks.size(); i += 1) {
+            byte[] c = chunks.get(i);
+            assertTrue(c.length <= Chunker.MAX_SIZE);
+            if (i < chunks.size() - 1) {
+                assertTrue(c.length >= Chunker.MIN_SIZE);
+            }
+            for (int k = 0; k < c.length; k += 1) {
+                assertEquals(data[n + k], c[k]);
+            }
+            n += c.length;
+        }
+        assertEquals(data.length, n);
+    }
+
+    /** Content with no boundary, such as a run of one byte, is cut every
+     *  MAX_SIZE bytes. */
+    @Test
+    public void maxSizeTest() {
+        int full = 3;
+        int rest = Chunker.MIN_SIZE / 2;
+        List<byte[]> chunks = chunks(new byte[full * Chunker.MAX_SIZE
+                                              + rest]);
+        assertEquals(full + 1, chunks.size());
+        for (int i = 0; i < full; i += 1) {
+            assertEquals(Chunker.MAX_SIZE, chunks.get(i).length);
+        }
+        assertEquals(rest, chunks.get(full).length);
+    }
+
+    /** An empty stream has no chunks, and one shorter than MIN_SIZE is a
+     *  single chunk. */
+    @Test
+    public void shortTest() {
+        assertEquals(0, chunks(new byte[0]).size());
+        byte[] data = randomBytes(new Random(SEED), Chunker.MIN_SIZE - 1);
+        List<byte[]> chunks = chunks(data);
+        assertEquals(1, chunks.size());
+        assertArrayEquals(data, chunks.get(0));
+    }
+
+    /** Boundaries do not depend on how the stream delivers its bytes. */
+    @Test
+    public void shortReadsTest() {
+        byte[] data = randomBytes(new Random(SEED), SIZE);
+        List<byte[]> expected = chunks(data);
+        List<byte[]> actual = new ArrayList<>();
+        Chunker chunker = new Chunker(new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, SHORT_READ));
+            }
+        });
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            actual.add(c);
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i += 1) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    /** Inserting or deleting one byte changes only the chunks around
+     *  the edit. */
+    @Test
+    public void insertionTest() {
+        Random random = new Random(SEED);
+        byte[] data = randomBytes(random, SIZE);
+        int at = SIZE / 2;
+        byte[] inserted = new byte[SIZE + 1];
+        System.arraycopy(data, 0, inserted, 0, at);
+        inserted[at] = (byte) random.nextInt();
+        System.arraycopy(data, at, inserted, at + 1, SIZE - at);
+        byte[] deleted = new byte[SIZE - 1];
+        System.arraycopy(data, 0, deleted, 0, at);
+        System.arraycopy(data, at + 1, deleted, at, SIZE - at - 1);
+        HashSet<String> old = ids(chunks(data));
+        for (byte[] edited : new byte[][] { inserted, deleted }) {
+            int changed = 0;
+            for (String id : ids(chunks(edited))) {
+                if (!old.contains(id)) {
+                    changed += 1;
+                }
+            }
+            assertTrue(changed >= 1);
+            assertTrue(changed <= MAX_CHANGED);
+        }
+    }
+
+    /** Returns the chunks of DATA. */
+    private static List<byte[]> chunks(byte[] data) {
+        return chunks(new ByteArrayInputStream(data));
+    }
+
+    /** Returns the chunks of the stream IN. */
+    private static List<byte[]> chunks(InputStream in) {
+        Chunker chunker = new Chunker(in);
+        List<byte[]> result = new ArrayList<>();
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    /** Returns the IDs of CHUNKS. */
+    private static HashSet<String> ids(List<byte[]> chunks) {
+        HashSet<String> result = new HashSet<>();
+        for (byte[] c : chunks) {
+            result.add(Utils.sha1(c));
+        }
+        return result;
+    }
+
+    /** Returns N bytes chosen by RANDOM. */
+    private static byte[] randomBytes(Random random, int n) {
+        byte[] result = new byte[n];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** Seed of the random inputs. */
+    private static final long SEED = 17;
+    /** Length of the random inputs, long enough for dozens of chunks. */
+    private static final int SIZE = 4 << 20;
+    /** Most bytes returned by each read of a slow stream. */
+    private static final int SHORT_READ = 1000;
+    /** Most chunks a one-byte edit may change: the one holding it and
+     *  the one after, should the edit move a boundary. */
+    private static final int MAX_CHANGED = 2;
+}
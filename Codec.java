@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+
+/** A compression scheme for stored objects. Every object written by
+ *  ObjectStore starts with a header recording the codec that compressed
+ *  it: the bytes MAGIC0 and MAGIC1, the format VERSION, the codec's id(),
+ *  the object's type and its uncompressed length as an int. The type lets
+ *  readers tell commits from blobs by reading just the header. Headers
+ *  of VERSION1 lack the type byte, and files without any header are
+ *  plain serialized objects from before compression, so repositories
+ *  mixing codecs, or written before compression, can always be read.
+ *  The codec used for new objects is named by the gitlet.codec system
+ *  property and defaults to deflate.
+ *  @author Ethan Brown
+ */
+interface Codec {
+
+    /** First byte of an object header. */
+    byte MAGIC0 = 'G';
+    /** Second byte of an object header. */
+    byte MAGIC1 = 'L';
+    /** Version of the object header. */
+    byte VERSION = 2;
+    /** Version of object headers without a type. */
+    byte VERSION1 = 1;
+    /** Byte length of an object header. */
+    int HEADER_SIZE = 9;
+    /** Byte length of a VERSION1 object header. */
+    int VERSION1_HEADER_SIZE = 8;
+    /** Position of the codec id within a header. */
+    int CODEC_OFFSET = 3;
+    /** Position of the object type within a header. */
+    int TYPE_OFFSET = 4;
+    /** Id of the codec that stores data unchanged. */
+    int NONE = 0;
+    /** Name of the system property selecting the codec for writes. */
+    String PROPERTY = "gitlet.codec";
+
+    /** Returns the number recorded in headers for this codec. */
+    int id();
+
+    /** Returns the name by which this codec is selected. */
+    String name();
+
+    /** Returns the compressed form of DATA. */
+    byte[] compress(byte[] data);
+
+    /** Returns the LENGTH bytes that result from decompressing the bytes
+     *  of DATA starting at OFFSET. */
+    byte[] decompress(byte[] data, int offset, int length);
+
+    /** All known codecs, indexed by id(). */
+    Codec[] ALL = { new NoCodec(), new DeflateCodec(), new LzfCodec() };
+
+    /** Returns the codec with the given ID. */
+    static Codec forId(int id) {
+        if (id < 0 || id >= ALL.length) {
+            throw new GitletException("Unknown object codec " + id + ".");
+        }
+        return ALL[id];
+    }
+
+    /** Returns the codec named NAME. */
+    static Codec forName(String name) {
+        for (Codec c : ALL) {
+            if (c.name().equals(name)) {
+                return c;
+            }
+        }
+        throw new GitletException("Unknown object codec " + name + ".");
+    }
+
+    /** Returns the codec selected for new objects. */
+    static Codec current() {
+        return forName(System.getProperty(PROPERTY, "deflate"));
+    }
+
+    /** Returns DATA, an object of the given TYPE, compressed with CODEC
+     *  behind an object header. Falls back to storing DATA unchanged if
+     *  CODEC does not make it smaller. */
+    static byte[] encode(Codec codec, int type, byte[] data) {
+        byte[] body = codec.compress(data);
+        if (body.length >= data.length) {
+            codec = ALL[NONE];
+            body = data;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        out.put(MAGIC0).put(MAGIC1).put(VERSION).put((byte) codec.id());
+        out.put((byte) type).putInt(data.length).put(body);
+        return out.array();
+    }
+
+    /** Returns the original bytes of the stored object DATA. */
+    static byte[] decode(byte[] data) {
+        if (!hasHeader(data, data.length)) {
+            return data;
+        }
+        int size = data[2] == VERSION1 ? VERSION1_HEADER_SIZE : HEADER_SIZE;
+        int length = ByteBuffer.wrap(data).getInt(size - Integer.BYTES);
+        return forId(data[CODEC_OFFSET]).decompress(data, size, length);
+    }
+
+    /** Returns the type recorded in the header among the first N bytes of
+     *  DATA, or 0 if the type is not recorded. */
+    static int type(byte[] data, int n) {
+        if (!hasHeader(data, n) || data[2] == VERSION1) {
+            return 0;
+        }
+        return data[TYPE_OFFSET];
+    }
+
+    /** Returns true iff the first N bytes of DATA hold an object
+     *  header. */
+    static boolean hasHeader(byte[] data, int n) {
+        if (n < VERSION1_HEADER_SIZE || data[0] != MAGIC0
+                || data[1] != MAGIC1) {
+            return false;
+        }
+        if (data[2] != VERSION && data[2] != VERSION1) {
+            throw new GitletException("Unknown object format.");
+        }
+        return true;
+    }
+}
@@ -1,106 +1,212 @@
 package gitlet;
 
-import java.io.File;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.TreeMap;
 
 /** Class used to make Commits and keep track of their contents.
+ * Commits are stored in a binary encoding, whose bytes also determine
+ * their IDs: the byte MAGIC, the FORMAT version, the date in
+ * milliseconds as a long, the message as an int length and that many
+ * bytes of UTF-8, the number of parents as a byte and the ID of each
+ * as ID_BYTES bytes, then the ID of the Tree of its root directory.
+ * Equal commits thus always get equal IDs, and a commit only stores the
+ * directories it changes. Commits of FORMAT1 list every file instead of
+ * a tree, as an int count and, in order of path, each path as a short
+ * length and UTF-8 bytes followed by its blob ID. Those, and commits
+ * written by Java serialization in older repositories, are still read.
  * @author Ethan Brown
  */
 public class Commit implements Serializable {
 
+    /** Version of serialized commits, as computed for the original
+     *  class, so that commits of older repositories stay readable. */
+    private static final long serialVersionUID = 658187485018901012L;
+    /** First byte of an encoded commit. Serialized commits start with
+     *  0xAC instead. */
+    static final byte MAGIC = 'C';
+    /** Version of the commit encoding. */
+    static final byte FORMAT = 2;
+    /** Version of the commit encoding listing every file. */
+    static final byte FORMAT1 = 1;
+    /** Byte length of an ID within an encoded commit. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Byte length of the fixed part of an encoded commit: magic,
+     *  format, date, message length, parent count and root tree. */
+    private static final int FIXED_SIZE = 2 + Long.BYTES + Integer.BYTES
+        + 1 + ID_BYTES;
+    /** Mask extracting an unsigned short. */
+    private static final int SHORT_MASK = 0xffff;
+
     /** Instantiates commit by taking in current
      * Repository R, String message S,
      * parent commit C, and date D. */
     public Commit(Repository r, String s, Commit c, Date d) {
         if (c != null) {
-            boolean changesAdded = false;
-            byte[] cSerial = Utils.serialize(c);
-            firstParent = Utils.sha1((Object) cSerial);
+            firstParent = c.getID();
             this.date = d;
             message = s;
-            this.contents = c.contents;
-            File stagingAddDir = new File(Repository.ADD_STAGE);
-            File stagingRemDir = new File(Repository.REM_STAGE);
-            File[] addDirectoryListing = stagingAddDir.listFiles();
-            File[] remDirectoryListing = stagingRemDir.listFiles();
-            if (addDirectoryListing != null) {
-                for (File i: addDirectoryListing) {
-                    changesAdded = true;
-                    Blob b = Utils.readObject(i, Blob.class);
-                    byte[] bSerial = Utils.serialize(b);
-                    String bSHA = Utils.sha1((Object) bSerial);
-                    contents.put(b.getName(), bSHA);
-                    i.delete();
-                }
-            }
-            if (remDirectoryListing != null) {
-                for (File j: remDirectoryListing) {
-                    changesAdded = true;
-                    contents.remove(j.getName());
-                    j.delete();
-                }
-            }
-            if (!changesAdded) {
-                throw new GitletException("No changes added to the commit.");
-            }
+            this.tree = applyStage(c.getTree());
         } else {
             this.date = d;
             message = s;
-            contents = new HashMap<>();
+            this.tree = new Tree().write();
         }
         this.commitFile(r);
     }
     /** Instantiates commit with two parents PAR1 and PAR2. Takes in
      * String message S, current Repository R and Date D. */
     public Commit(Repository r, String s, Commit par1, Commit par2, Date d) {
-        boolean changesAdded = false;
-        byte[] par1Serial = Utils.serialize(par1);
-        byte[] par2Serial = Utils.serialize(par2);
-        this.firstParent = Utils.sha1((Object) par1Serial);
-        this.secondParent = Utils.sha1((Object) par2Serial);
+        this.firstParent = par1.getID();
+        this.secondParent = par2.getID();
         this.date = d;
         message = s;
-        this.contents = par1.contents;
-        File stagingAddDir = new File(Repository.ADD_STAGE);
-        File stagingRemDir = new File(Repository.REM_STAGE);
-        File[] addDirectoryListing = stagingAddDir.listFiles();
-        File[] remDirectoryListing = stagingRemDir.listFiles();
-        if (addDirectoryListing != null) {
-            for (File i: addDirectoryListing) {
-                changesAdded = true;
-                Blob b = Utils.readObject(i, Blob.class);
-                byte[] bSerial = Utils.serialize(b);
-                String bSHA = Utils.sha1((Object) bSerial);
-                contents.put(b.getName(), bSHA);
-                i.delete();
-            }
+        this.tree = applyStage(par1.getTree());
+        this.commitFile(r);
+    }
+    /** Applies the staging area to the root tree with ID BASE, marks it
+     * committed, and returns the ID of the resulting root tree. The IDs
+     * of staged blobs are read from the index, so no blob is read or
+     * hashed again, and only the trees on the staged paths are
+     * written. */
+    private static String applyStage(String base) {
+        StagingIndex stage = StagingIndex.read();
+        if (!stage.hasChanges()) {
+            throw new GitletException("No changes added to the commit.");
         }
-        if (remDirectoryListing != null) {
-            for (File j: remDirectoryListing) {
-                changesAdded = true;
-                contents.remove(j.getName());
-                j.delete();
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (String path : stage.entries().keySet()) {
+            StagingIndex.Entry e = stage.get(path);
+            if (e.getState() == StagingIndex.ADDED) {
+                changes.put(path, e.getID());
+            } else if (e.getState() == StagingIndex.REMOVED) {
+                changes.put(path, null);
             }
         }
-        if (!changesAdded) {
-            throw new GitletException("No changes added to the commit.");
-        }
-        this.commitFile(r);
+        stage.commit();
+        stage.write();
+        return root(Tree.update(base, changes));
     }
-    /** Takes in Repository R and serializes and saves commit in file
-     * in OBJ_DIR named its shaID. */
+    /** Returns ID, the ID of a root tree, or that of the empty tree if
+     * ID is null. */
+    private static String root(String id) {
+        return id == null ? new Tree().write() : id;
+    }
+    /** Takes in Repository R and encodes and saves commit in the
+     * object store named its shaID, then records it in the commit graph
+     * and the message index. */
     void commitFile(Repository r) {
-        byte[] commitSerial = Utils.serialize(this);
-        String commitSHA = Utils.sha1((Object) commitSerial);
-        File commitFile = new File(Repository.OBJ_DIR + commitSHA);
-        Utils.writeObject(commitFile, this);
+        byte[] encoded = encode();
+        String commitSHA = Utils.sha1((Object) encoded);
+        this.id = commitSHA;
+        ObjectStore.writeEncoded(commitSHA,
+                                 Codec.encode(Codec.current(),
+                                              ObjectStore.COMMIT, encoded));
+        CommitGraph.append(commitSHA, this);
+        MessageIndex.add(commitSHA, message);
+    }
+    /** Returns the binary encoding of this commit. */
+    byte[] encode() {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int parents = secondParent != null ? 2 : firstParent != null ? 1 : 0;
+        ByteBuffer out = ByteBuffer.allocate(FIXED_SIZE + text.length
+                                             + parents * ID_BYTES);
+        out.put(MAGIC).put(FORMAT).putLong(date.getTime());
+        out.putInt(text.length).put(text).put((byte) parents);
+        if (parents > 0) {
+            out.put(Utils.fromHex(firstParent));
+        }
+        if (parents > 1) {
+            out.put(Utils.fromHex(secondParent));
+        }
+        out.put(Utils.fromHex(getTree()));
+        return out.array();
+    }
+    /** Returns the commit stored as DATA, either encoded or, in older
+     * repositories, serialized. */
+    static Commit decode(byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return Utils.deserialize(data, Commit.class);
+        }
+        if (data[1] != FORMAT && data[1] != FORMAT1) {
+            throw new GitletException("Unknown commit format.");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, 2, data.length - 2);
+        Date date = new Date(in.getLong());
+        int length = in.getInt();
+        String message = new String(data, in.position(), length,
+                                    StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        String[] parents = new String[2];
+        int count = in.get();
+        for (int i = 0; i < count; i += 1) {
+            parents[i] = Utils.toHex(data, in.position(), ID_BYTES);
+            in.position(in.position() + ID_BYTES);
+        }
+        if (data[1] == FORMAT) {
+            return new Commit(message, date, parents[0], parents[1],
+                              Utils.toHex(data, in.position(), ID_BYTES));
+        }
+        Commit result = new Commit(message, date, parents[0], parents[1],
+                                   null);
+        count = in.getInt();
+        result.contents = new HashMap<>(2 * count);
+        for (int i = 0; i < count; i += 1) {
+            length = in.getShort() & SHORT_MASK;
+            String path = new String(data, in.position(), length,
+                                     StandardCharsets.UTF_8);
+            String id = Utils.toHex(data, in.position() + length, ID_BYTES);
+            in.position(in.position() + length + ID_BYTES);
+            result.contents.put(path, id);
+        }
+        return result;
     }
-    /** Returns HashMap of this commit's contents. */
+    /** A commit with MESSAGE and DATE, whose parents have the IDs FIRST
+     * and SECOND, either of which may be null, and whose root directory
+     * is the tree with ID TREE. Nothing is stored. */
+    Commit(String message, Date date, String first, String second,
+           String tree) {
+        this.message = message;
+        this.date = date;
+        this.firstParent = first;
+        this.secondParent = second;
+        this.tree = tree;
+    }
+    /** Returns this commit's shaID, computing it only once. */
+    String getID() {
+        if (this.id == null) {
+            this.id = Utils.sha1((Object) encode());
+        }
+        return this.id;
+    }
+    /** Records that this commit was read from the object named ID,
+     * sparing a later getID() from re-serializing it. */
+    void setID(String id) {
+        this.id = id;
+    }
+    /** Returns HashMap of this commit's contents, mapping the path of
+     * each file to its blob ID. Read from the commit's trees on first
+     * use. */
     HashMap<String, String> getContents() {
+        if (this.contents == null) {
+            HashMap<String, String> files = new HashMap<>();
+            Tree.flatten(this.tree, "", files);
+            this.contents = files;
+        }
         return this.contents;
     }
+    /** Returns the ID of the tree of this commit's root directory. For
+     * commits of older repositories, which have none, the trees are
+     * built and stored on first use. */
+    String getTree() {
+        if (this.tree == null) {
+            this.tree = root(Tree.update(null, new TreeMap<>(contents)));
+        }
+        return this.tree;
+    }
     /** Returns this commit's first parent shaID in the form of a string. */
     String getParent() {
         return this.firstParent;
@@ -117,8 +223,13 @@ public class Commit implements Serializable {
     Date getDate() {
         return this.date;
     }
-    /** HashMap of this commit's contents. */
+    /** HashMap of this commit's contents, or null until read from its
+     * trees. */
     private HashMap<String, String> contents;
+    /** ID of the tree of this commit's root directory, or null until
+     * built for a commit of an older repository. Not serialized, so that
+     * such commits keep their serialized form. */
+    private transient String tree;
     /** This commit's string message. */
     private String message;
     /** This commit's date. */
@@ -127,4 +238,6 @@ public class Commit implements Serializable {
     private String firstParent;
     /** This commit's second parent's shaID. */
     private String secondParent = null;
+    /** This commit's shaID, once known. Not part of the stored commit. */
+    private transient String id;
 }
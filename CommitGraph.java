@@ -0,0 +1,452 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** Persistent table of every commit in the repository, holding for each
+ *  one its parents (as positions in the table), its date and its
+ *  generation number. Parents always appear before their children, so
+ *  the table only ever grows at the end. This lets history walks such as
+ *  merge-base run without reading a single object file.
+ *  The file starts with MAGIC, VERSION and the number of records,
+ *  followed by fixed-size records of the form
+ *      id (20 bytes), first parent, second parent, generation, date
+ *  where a missing parent is stored as NONE.
+ *  Commits are looked up by ID through INDEX_FILE, an IdTable of the IDs
+ *  of the first commits in the graph, sorted and paired with their
+ *  positions. Commits appended since the table was written are searched
+ *  directly; the table is rewritten once there are MAX_UNINDEXED of them.
+ *  Unlike the files of a Transaction, the graph is changed in place: a
+ *  record is written past the end and flushed before the count in the
+ *  header is raised, and only records that the count covers, and that
+ *  the file holds in full, are read. A crash, or a reader running
+ *  alongside the writer, thus never sees a torn record, and the next
+ *  append overwrites any left past the count.
+ *  @author Ethan Brown
+ */
+class CommitGraph {
+
+    /** Location of the commit-graph file within the .gitlet directory. */
+    static final String GRAPH_FILE = ".gitlet/commit-graph";
+    /** Location of the sorted ID table of the commit graph. */
+    static final String INDEX_FILE = ".gitlet/commit-graph.idx";
+    /** Most commits appended to the graph before the ID table is
+     *  rewritten. */
+    static final int MAX_UNINDEXED = 1024;
+    /** Marks a file as a commit graph ("CGPH"). */
+    static final int MAGIC = 0x43475048;
+    /** Version of the on-disk format. */
+    static final int VERSION = 1;
+    /** Byte length of the file header. */
+    static final int HEADER_SIZE = 12;
+    /** Position of the record count within the header. */
+    static final int COUNT_OFFSET = 8;
+    /** Byte length of a raw commit ID. */
+    static final int ID_SIZE = 20;
+    /** Byte length of one record. */
+    static final int RECORD_SIZE = ID_SIZE + 4 + 4 + 4 + 8;
+    /** Parent position used for a missing parent. */
+    static final int NONE = -1;
+
+    /** Flag for commits reachable from the first merge-base argument. */
+    private static final int PARENT1 = 1;
+    /** Flag for commits reachable from the second merge-base argument. */
+    private static final int PARENT2 = 2;
+    /** Flag for commits already known to be reachable from a result. */
+    private static final int STALE = 4;
+    /** Flag for commits that have been queued for the result list. */
+    private static final int RESULT = 8;
+
+    /** A graph read from the raw file contents RAW, with ID table
+     *  INDEX, which may be null. */
+    private CommitGraph(ByteBuffer raw, IdTable index) {
+        data = raw;
+        size = Math.min(raw.getInt(COUNT_OFFSET),
+                        (raw.limit() - HEADER_SIZE) / RECORD_SIZE);
+        this.index = index;
+        indexed = index == null ? 0 : Math.min(index.size(), size);
+    }
+
+    /** Returns the repository's commit graph, building it from the
+     *  object store first if it does not exist yet. The graph last loaded
+     *  is returned again as long as neither of its files has changed. */
+    static CommitGraph load() {
+        File f = new File(GRAPH_FILE);
+        if (!f.exists()) {
+            rebuild();
+        }
+        File indexFile = new File(INDEX_FILE);
+        StagingIndex.Entry graphStat = StagingIndex.stat(f);
+        StagingIndex.Entry indexStat =
+            indexFile.exists() ? StagingIndex.stat(indexFile) : null;
+        if (loaded != null && graphStat.sameStat(loadedGraph)
+                && (indexStat == null ? loadedIndex == null
+                    : loadedIndex != null && indexStat.sameStat(loadedIndex))) {
+            return loaded;
+        }
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer data =
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC
+                    || data.getInt(4) != VERSION) {
+                throw new GitletException("Corrupt commit graph.");
+            }
+            loaded = new CommitGraph(data, IdTable.open(indexFile));
+            loadedGraph = graphStat;
+            loadedIndex = indexStat;
+            return loaded;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Records commit C, whose ID is ID, at the end of the graph file.
+     *  Does nothing if the commit is already present. Rebuilds the graph
+     *  instead if it lacks a parent of C, as after a crash with syncing
+     *  off. */
+    static void append(String id, Commit c) {
+        File f = new File(GRAPH_FILE);
+        if (!f.exists()) {
+            rebuild();
+            return;
+        }
+        CommitGraph graph = load();
+        if (graph.position(id) != NONE) {
+            return;
+        }
+        int p1 = graph.position(c.getParent());
+        int p2 = graph.position(c.getSecondParent());
+        if ((p1 == NONE && c.getParent() != null)
+                || (p2 == NONE && c.getSecondParent() != null)) {
+            rebuild();
+            return;
+        }
+        int gen = 1;
+        if (p1 != NONE) {
+            gen = Math.max(gen, graph.generation(p1) + 1);
+        }
+        if (p2 != NONE) {
+            gen = Math.max(gen, graph.generation(p2) + 1);
+        }
+        try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+            out.seek(HEADER_SIZE + (long) graph.size() * RECORD_SIZE);
+            out.write(record(id, p1, p2, gen, c.getDate().getTime()));
+            Transaction.flush(out.getChannel());
+            out.seek(COUNT_OFFSET);
+            out.writeInt(graph.size() + 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.created(f);
+        if (graph.size() + 1 - graph.indexed > MAX_UNINDEXED) {
+            load().writeIndex();
+        }
+    }
+
+    /** Rewrites the graph file from the commits found in the object
+     *  store, placing every commit after its parents. Objects written
+     *  before types were recorded are read to tell commits from blobs.
+     *  A commit that cannot be read fails the command, since a graph
+     *  without it would give wrong merge bases. */
+    static void rebuild() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : ObjectStore.ids()) {
+            int type = ObjectStore.typeOf(id);
+            if (type != ObjectStore.COMMIT && (type != ObjectStore.UNKNOWN
+                    || !(ObjectStore.read(id, Serializable.class)
+                         instanceof Commit))) {
+                continue;
+            }
+            try {
+                commits.put(id, ObjectStore.readCommit(id));
+            } catch (IllegalArgumentException excp) {
+                throw new IllegalArgumentException("cannot read commit " + id
+                                                   + ": " + excp.getMessage());
+            }
+        }
+        HashMap<String, Integer> positions = new HashMap<>();
+        ArrayList<byte[]> records = new ArrayList<>();
+        ArrayList<Integer> generations = new ArrayList<>();
+        ArrayList<String> stack = new ArrayList<>();
+        for (String start : commits.keySet()) {
+            stack.add(start);
+            while (!stack.isEmpty()) {
+                String id = stack.get(stack.size() - 1);
+                if (positions.containsKey(id)) {
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                Commit c = commits.get(id);
+                boolean ready = true;
+                for (String p : new String[] {
+                    c.getParent(), c.getSecondParent() }) {
+                    if (p != null && commits.containsKey(p)
+                            && !positions.containsKey(p)) {
+                        stack.add(p);
+                        ready = false;
+                    }
+                }
+                if (!ready) {
+                    continue;
+                }
+                stack.remove(stack.size() - 1);
+                int p1 = lookup(positions, c.getParent());
+                int p2 = lookup(positions, c.getSecondParent());
+                int gen = 1;
+                if (p1 != NONE) {
+                    gen = Math.max(gen, generations.get(p1) + 1);
+                }
+                if (p2 != NONE) {
+                    gen = Math.max(gen, generations.get(p2) + 1);
+                }
+                positions.put(id, records.size());
+                generations.add(gen);
+                records.add(record(id, p1, p2, gen, c.getDate().getTime()));
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE
+                + records.size() * RECORD_SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putInt(records.size());
+        for (byte[] r : records) {
+            out.put(r);
+        }
+        Utils.writeAtomically(new File(GRAPH_FILE), out.array());
+        Transaction.created(new File(GRAPH_FILE));
+        load().writeIndex();
+    }
+
+    /** Rewrites the ID table to cover every commit in this graph. */
+    private void writeIndex() {
+        Integer[] order = new Integer[size];
+        String[] ids = new String[size];
+        for (int p = 0; p < size; p += 1) {
+            order[p] = p;
+            ids[p] = idAt(p);
+        }
+        Arrays.sort(order, (x, y) -> ids[x].compareTo(ids[y]));
+        ArrayList<String> sorted = new ArrayList<>();
+        long[] positions = new long[size];
+        for (int i = 0; i < size; i += 1) {
+            sorted.add(ids[order[i]]);
+            positions[i] = order[i];
+        }
+        IdTable.write(new File(INDEX_FILE), sorted, positions);
+    }
+
+    /** Returns the full ID of the only commit whose ID starts with
+     *  PREFIX, which may have any length. Throws a GitletException if
+     *  there is no such commit or if PREFIX is ambiguous. */
+    String resolve(String prefix) {
+        String lower = prefix.toLowerCase();
+        if (lower.isEmpty() || lower.length() > 2 * ID_SIZE
+                || !lower.matches("[0-9a-f]+")) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        String found = null;
+        int matches = 0;
+        if (index != null) {
+            int[] range = index.range(lower);
+            for (int i = range[0]; i < range[1] && matches < 2; i += 1) {
+                if (index.valueAt(i) < size) {
+                    found = index.idAt(i);
+                    matches += 1;
+                }
+            }
+        }
+        for (int p = indexed; p < size && matches < 2; p += 1) {
+            String id = idAt(p);
+            if (id.startsWith(lower)) {
+                found = id;
+                matches += 1;
+            }
+        }
+        if (matches == 0) {
+            throw new GitletException("No commit with that id exists.");
+        } else if (matches > 1) {
+            throw new GitletException("Ambiguous commit id " + prefix + ".");
+        }
+        return found;
+    }
+
+    /** Returns the ID of the best common ancestor of the commits with IDS
+     *  A and B, or null if they have none. Walks the graph from both
+     *  commits at once in order of decreasing generation, so only commits
+     *  newer than the merge base are ever visited. */
+    String mergeBase(String a, String b) {
+        int pa = position(a);
+        int pb = position(b);
+        if (pa == NONE || pb == NONE) {
+            return null;
+        }
+        if (pa == pb) {
+            return a;
+        }
+        final int[] flags = new int[size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            new Comparator<Integer>() {
+                @Override
+                public int compare(Integer x, Integer y) {
+                    int cmp = Integer.compare(generation(y), generation(x));
+                    if (cmp == 0) {
+                        cmp = Long.compare(date(y), date(x));
+                    }
+                    return cmp;
+                }
+            });
+        flags[pa] |= PARENT1;
+        flags[pb] |= PARENT2;
+        queue.add(pa);
+        queue.add(pb);
+        ArrayList<Integer> results = new ArrayList<>();
+        while (!allStale(queue, flags)) {
+            int p = queue.poll();
+            int f = flags[p] & (PARENT1 | PARENT2 | STALE);
+            if (f == (PARENT1 | PARENT2)) {
+                if ((flags[p] & RESULT) == 0) {
+                    flags[p] |= RESULT;
+                    results.add(p);
+                }
+                f |= STALE;
+            }
+            for (int parent : new int[] { parent1(p), parent2(p) }) {
+                if (parent == NONE || (flags[parent] & f) == f) {
+                    continue;
+                }
+                flags[parent] |= f;
+                queue.add(parent);
+            }
+        }
+        for (int r : results) {
+            if ((flags[r] & STALE) == 0) {
+                return idAt(r);
+            }
+        }
+        return null;
+    }
+
+    /** Returns true iff every commit left in QUEUE is marked STALE in
+     *  FLAGS. */
+    private static boolean allStale(PriorityQueue<Integer> queue,
+                                    int[] flags) {
+        for (int p : queue) {
+            if ((flags[p] & STALE) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the number of commits in this graph. */
+    int size() {
+        return this.size;
+    }
+
+    /** Returns the position of the commit with ID, or NONE if it is not
+     *  in the graph. Looks the ID up in the ID table, then searches the
+     *  commits appended since. */
+    int position(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        if (index != null) {
+            int i = index.find(id);
+            if (i != -1 && index.valueAt(i) < size) {
+                return (int) index.valueAt(i);
+            }
+        }
+        byte[] raw = Utils.fromHex(id);
+        for (int p = size - 1; p >= indexed; p -= 1) {
+            int base = offset(p);
+            int i;
+            for (i = 0; i < ID_SIZE; i += 1) {
+                if (data.get(base + i) != raw[i]) {
+                    break;
+                }
+            }
+            if (i == ID_SIZE) {
+                return p;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the ID of the commit at position P. */
+    String idAt(int p) {
+        byte[] raw = new byte[ID_SIZE];
+        int base = offset(p);
+        for (int i = 0; i < ID_SIZE; i += 1) {
+            raw[i] = data.get(base + i);
+        }
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the position of the first parent of the commit at P. */
+    int parent1(int p) {
+        return data.getInt(offset(p) + ID_SIZE);
+    }
+
+    /** Returns the position of the second parent of the commit at P. */
+    int parent2(int p) {
+        return data.getInt(offset(p) + ID_SIZE + 4);
+    }
+
+    /** Returns the generation number of the commit at P. */
+    int generation(int p) {
+        return data.getInt(offset(p) + ID_SIZE + 8);
+    }
+
+    /** Returns the date, in milliseconds, of the commit at P. */
+    long date(int p) {
+        return data.getLong(offset(p) + ID_SIZE + 12);
+    }
+
+    /** Returns the byte offset of the record at position P. */
+    private static int offset(int p) {
+        return HEADER_SIZE + p * RECORD_SIZE;
+    }
+
+    /** Returns POSITIONS' entry for ID, or NONE. */
+    private static int lookup(HashMap<String, Integer> positions,
+                              String id) {
+        Integer p = id == null ? null : positions.get(id);
+        return p == null ? NONE : p;
+    }
+
+    /** Returns the encoded record for commit ID with parents P1 and P2,
+     *  generation GEN and date DATE. */
+    private static byte[] record(String id, int p1, int p2, int gen,
+                                 long date) {
+        ByteBuffer r = ByteBuffer.allocate(RECORD_SIZE);
+        r.put(Utils.fromHex(id)).putInt(p1).putInt(p2).putInt(gen);
+        r.putLong(date);
+        return r.array();
+    }
+
+    /** The graph last returned by load, or null. */
+    private static CommitGraph loaded;
+    /** Status of the graph file when LOADED was read. */
+    private static StagingIndex.Entry loadedGraph;
+    /** Status of the index file when LOADED was read, or null if there
+     *  was none. */
+    private static StagingIndex.Entry loadedIndex;
+
+    /** Raw contents of the graph file. */
+    private final ByteBuffer data;
+    /** Number of records in data. */
+    private final int size;
+    /** The sorted ID table, or null if there is none. */
+    private final IdTable index;
+    /** Number of commits, from the start of the graph, in index. */
+    private final int indexed;
+}
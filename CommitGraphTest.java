@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the CommitGraph, on a history of commits made directly, which
+ *  may take shapes, such as criss-cross merges, that no sequence of
+ *  commands produces.
+ *  @author Ethan Brown
+ */
+public class CommitGraphTest {
+
+    /** Removes the repository of the last test. */
+    @After
+    public void cleanUp() {
+        TestRepo.delete();
+    }
+
+    /** Merge bases of commits on one line, on diverging branches, after
+     *  a merge and across a criss-cross merge. */
+    @Test
+    public void mergeBaseTest() {
+        makeHistory();
+        checkMergeBases(CommitGraph.load());
+    }
+
+    /** A graph rebuilt from the object store gives the same answers, and
+     *  numbers generations from the roots. */
+    @Test
+    public void rebuildTest() {
+        makeHistory();
+        CommitGraph before = CommitGraph.load();
+        new File(CommitGraph.GRAPH_FILE).delete();
+        new File(CommitGraph.INDEX_FILE).delete();
+        CommitGraph graph = CommitGraph.load();
+        assertNotSame(before, graph);
+        assertEquals(before.size(), graph.size());
+        checkMergeBases(graph);
+        assertEquals(1, graph.generation(graph.position(root)));
+        assertEquals(2, graph.generation(graph.position(a1)));
+        assertEquals(3, graph.generation(graph.position(m1)));
+        assertEquals(4, graph.generation(graph.position(a2)));
+        assertEquals(1, graph.generation(graph.position(orphan)));
+        assertEquals(graph.position(a1),
+                     graph.parent1(graph.position(m1)));
+        assertEquals(graph.position(b1),
+                     graph.parent2(graph.position(m1)));
+        assertEquals(CommitGraph.NONE,
+                     graph.parent1(graph.position(orphan)));
+    }
+
+    /** Appending a commit already in the graph changes nothing. */
+    @Test
+    public void appendTest() {
+        makeHistory();
+        CommitGraph graph = CommitGraph.load();
+        Commit c = ObjectStore.readCommit(a2);
+        CommitGraph.append(a2, c);
+        assertEquals(graph.size(), CommitGraph.load().size());
+        assertEquals(a2, CommitGraph.load().idAt(graph.position(a2)));
+    }
+
+    /** Commits are found by any unambiguous prefix of their IDs, in
+     *  either case, whether the ID table covers them or they were
+     *  appended since it was written. */
+    @Test
+    public void resolveTest() {
+        makeHistory();
+        ArrayList<String> ids = new ArrayList<>(List.of(
+            root, a1, b1, m1, m2, a2, orphan));
+        for (int i = 0; i < EXTRA_COMMITS; i += 1) {
+            ids.add(commit(a2, null));
+        }
+        checkResolve(CommitGraph.load(), ids);
+        new File(CommitGraph.GRAPH_FILE).delete();
+        new File(CommitGraph.INDEX_FILE).delete();
+        checkResolve(CommitGraph.load(), ids);
+    }
+
+    /** Checks that GRAPH, which holds the commits with IDS and no
+     *  others, resolves each by its shortest unique prefix and reports
+     *  the next shorter one ambiguous, and rejects IDs of no commit. */
+    private static void checkResolve(CommitGraph graph, List<String> ids) {
+        for (String id : ids) {
+            assertEquals(id, graph.resolve(id));
+            assertEquals(id, graph.resolve(id.toUpperCase()));
+            int n = 1;
+            while (sharedPrefix(id.substring(0, n), ids)) {
+                n += 1;
+            }
+            assertEquals(id, graph.resolve(id.substring(0, n)));
+            if (n > 1) {
+                String prefix = id.substring(0, n - 1);
+                assertEquals("Ambiguous commit id " + prefix + ".",
+                             resolveError(graph, prefix));
+            }
+        }
+        for (String bad : new String[] {
+            "", "xyz", Utils.sha1("no such commit"), ids.get(0) + "0" }) {
+            assertEquals("No commit with that id exists.",
+                         resolveError(graph, bad));
+        }
+    }
+
+    /** Returns true iff more than one of IDS begins with PREFIX. */
+    private static boolean sharedPrefix(String prefix, List<String> ids) {
+        return ids.stream().filter(id -> id.startsWith(prefix)).count() > 1;
+    }
+
+    /** Returns the message of the error GRAPH reports when resolving
+     *  PREFIX. */
+    private static String resolveError(CommitGraph graph, String prefix) {
+        try {
+            graph.resolve(prefix);
+        } catch (GitletException excp) {
+            return excp.getMessage();
+        }
+        throw new AssertionError(prefix + " resolved");
+    }
+
+    /** Checks the merge bases of the history made by makeHistory in
+     *  GRAPH. */
+    private void checkMergeBases(CommitGraph graph) {
+        assertEquals(a1, graph.mergeBase(a1, a1));
+        assertEquals(root, graph.mergeBase(a1, root));
+        assertEquals(root, graph.mergeBase(root, a1));
+        assertEquals(root, graph.mergeBase(a1, b1));
+        assertEquals(b1, graph.mergeBase(a2, b1));
+        assertEquals(m1, graph.mergeBase(a2, m1));
+        String cross = graph.mergeBase(m1, m2);
+        assertTrue(cross, cross.equals(a1) || cross.equals(b1));
+        assertEquals(cross, graph.mergeBase(m2, m1));
+        assertNull(graph.mergeBase(a1, orphan));
+        assertNull(graph.mergeBase(a1, Utils.sha1("no such commit")));
+    }
+
+    /** Makes a repository holding this history, in which M1 and M2 both
+     *  merge A1 and B1, and ORPHAN shares no ancestor with the rest:
+     *
+     *      root - a1 - m1 - a2      orphan
+     *          \     X
+     *           b1 - m2
+     */
+    private void makeHistory() {
+        TestRepo.init();
+        root = Refs.read("master");
+        a1 = commit(root, null);
+        b1 = commit(root, null);
+        m1 = commit(a1, b1);
+        m2 = commit(b1, a1);
+        a2 = commit(m1, null);
+        orphan = commit(null, null);
+    }
+
+    /** Stores a new commit whose parents have the IDs FIRST and SECOND,
+     *  either of which may be null, and returns its ID. */
+    private String commit(String first, String second) {
+        made += 1;
+        Commit c = new Commit("commit " + made, new Date(made * TICK), first,
+                              second, new Tree().write());
+        c.commitFile(null);
+        return c.getID();
+    }
+
+    /** Milliseconds between the dates of successive commits. */
+    private static final long TICK = 1000;
+    /** Number of commits added by resolveTest, enough that some share
+     *  prefixes of two digits. */
+    private static final int EXTRA_COMMITS = 400;
+
+    /** Number of commits made by commit. */
+    private int made;
+    /** ID of the initial commit. */
+    private String root;
+    /** ID of the first child of root. */
+    private String a1;
+    /** ID of the second child of root. */
+    private String b1;
+    /** ID of a merge of b1 into a1. */
+    private String m1;
+    /** ID of a merge of a1 into b1. */
+    private String m2;
+    /** ID of the child of m1. */
+    private String a2;
+    /** ID of a commit without parents. */
+    private String orphan;
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A long-lived process serving the commands of one repository, started
+ *  with "java gitlet.Main daemon" in its working directory and stopped
+ *  with "java gitlet.Main daemon --stop". It listens on the Unix domain
+ *  socket SOCKET, so that any later invocation of Main in the same
+ *  directory forwards its arguments there instead of running them, and
+ *  only pays for starting a small client. Commands run one at a time in
+ *  the daemon, which keeps the object caches, the index and the commit
+ *  graph in memory between them; the index and graph are reread only
+ *  when their files change, so commands run without the daemon may be
+ *  mixed freely with those run through it.
+ *
+ *  A command forwarded to the daemon sees the client's settings: while
+ *  it runs, the system properties whose names start with
+ *  PROPERTY_PREFIX, such as the codec, the chunk threshold and the lock
+ *  timeout, are exactly those given to the client, and the daemon's own
+ *  are restored afterwards. Other properties, and the JVM's options, are
+ *  the daemon's.
+ *
+ *  A client sends the number of arguments as an int and each argument
+ *  as modified UTF-8, then the number of its properties with names
+ *  starting with PROPERTY_PREFIX and, for each, its name and value, both
+ *  as modified UTF-8. The daemon answers with frames, each a type byte
+ *  followed by an int: for OUT and ERR, the int is a length and is
+ *  followed by that many bytes for the standard output or error; for
+ *  EXIT, the int is the exit status and ends the answer.
+ *  @author Ethan Brown
+ */
+class Daemon {
+
+    /** Location of the daemon's socket within the .gitlet directory. */
+    static final String SOCKET = ".gitlet/daemon.sock";
+    /** Type of the frame ending an answer. */
+    static final byte EXIT = 0;
+    /** Type of frames of standard output. */
+    static final byte OUT = 1;
+    /** Type of frames of standard error. */
+    static final byte ERR = 2;
+    /** Status returned by forward when no daemon is running. */
+    static final int NO_DAEMON = -1;
+    /** Start of the names of the system properties forwarded with a
+     *  command. */
+    static final String PROPERTY_PREFIX = "gitlet.";
+    /** Size in bytes of the buffers of forwarded output. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Byte length of a frame header. */
+    private static final int FRAME_HEADER = 1 + Integer.BYTES;
+
+    /** Serves commands on SOCKET until asked to stop. A client that
+     *  goes away mid-command, as when it is interrupted, is reported on
+     *  the standard error, and the daemon serves the next one. */
+    static void serve() {
+        Path path = Paths.get(SOCKET);
+        try {
+            if (Files.exists(path)) {
+                if (isLive(path)) {
+                    throw new GitletException("A daemon is already "
+                                              + "running.");
+                }
+                Files.delete(path);
+            }
+            try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                server.bind(UnixDomainSocketAddress.of(path));
+                boolean running = true;
+                while (running) {
+                    try (SocketChannel client = server.accept()) {
+                        running = handle(client);
+                    } catch (IOException excp) {
+                        System.err.println("Lost a client: "
+                                           + excp.getMessage());
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff a daemon accepts connections on the socket at
+     *  PATH, rather than it being left by one that died. */
+    private static boolean isLive(Path path) {
+        try (SocketChannel probe = SocketChannel.open(
+                 UnixDomainSocketAddress.of(path))) {
+            return probe.isConnected();
+        } catch (IOException stale) {
+            return false;
+        }
+    }
+
+    /** Runs the command sent by CLIENT with its output forwarded to
+     *  CLIENT. Returns false iff the command asked the daemon to stop. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        Map<String, String> properties = new TreeMap<>();
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            properties.put(in.readUTF(), in.readUTF());
+        }
+        PrintStream out = new PrintStream(frames(client, OUT));
+        PrintStream err = new PrintStream(frames(client, ERR));
+        boolean stop = args.length == 2 && args[0].equals("daemon")
+            && args[1].equals("--stop");
+        int status = 0;
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        Map<String, String> oldProperties = setProperties(properties);
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                if (!stop) {
+                    out.println("A daemon is already running.");
+                }
+            } else {
+                ObjectStore.refresh();
+                status = Main.run(args);
+            }
+        } catch (RuntimeException excp) {
+            err.println(excp);
+            status = 1;
+        } finally {
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+            setProperties(oldProperties);
+            out.flush();
+            err.flush();
+        }
+        ByteBuffer exit = ByteBuffer.allocate(FRAME_HEADER);
+        exit.put(EXIT).putInt(status).flip();
+        while (exit.hasRemaining()) {
+            client.write(exit);
+        }
+        return !stop;
+    }
+
+    /** Returns the system properties whose names start with
+     *  PROPERTY_PREFIX, by name. */
+    private static Map<String, String> properties() {
+        Map<String, String> result = new TreeMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PROPERTY_PREFIX)) {
+                result.put(name, System.getProperty(name));
+            }
+        }
+        return result;
+    }
+
+    /** Makes PROPERTIES, by name, the system properties whose names start
+     *  with PROPERTY_PREFIX, and returns those they replace. */
+    private static Map<String, String> setProperties(
+            Map<String, String> properties) {
+        Map<String, String> old = properties();
+        for (String name : old.keySet()) {
+            System.clearProperty(name);
+        }
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            System.setProperty(e.getKey(), e.getValue());
+        }
+        return old;
+    }
+
+    /** Returns a stream sending what is written to it to CHANNEL in
+     *  frames of the given TYPE. */
+    private static OutputStream frames(WritableByteChannel channel,
+                                       byte type) {
+        return new BufferedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+                throws IOException {
+                ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + len);
+                frame.put(type).putInt(len).put(b, off, len).flip();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        }, BUFFER_SIZE);
+    }
+
+    /** Runs the command given by ARGS in the daemon of the repository in
+     *  the working directory, copying its output to the standard output
+     *  and error. Returns its exit status, or NO_DAEMON if no daemon is
+     *  running, in which case nothing was run. */
+    static int forward(String... args) {
+        Path path = Paths.get(SOCKET);
+        if (!Files.exists(path)) {
+            return NO_DAEMON;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(path));
+        } catch (IOException excp) {
+            return NO_DAEMON;
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            Map<String, String> properties = properties();
+            request.writeInt(properties.size());
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                request.writeUTF(e.getKey());
+                request.writeUTF(e.getValue());
+            }
+            request.flush();
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(channel));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                byte type = in.readByte();
+                int n = in.readInt();
+                if (type == EXIT) {
+                    System.out.flush();
+                    System.err.flush();
+                    return n;
+                }
+                PrintStream target = type == ERR ? System.err : System.out;
+                while (n > 0) {
+                    int chunk = Math.min(n, buffer.length);
+                    in.readFully(buffer, 0, chunk);
+                    target.write(buffer, 0, chunk);
+                    n -= chunk;
+                }
+            }
+        } catch (EOFException excp) {
+            throw new IllegalArgumentException("gitlet daemon exited");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** The default codec, compressing objects with zlib's deflate.
+ *  @author Ethan Brown
+ */
+class DeflateCodec implements Codec {
+
+    /** The id recorded in headers for this codec. */
+    static final int ID = 1;
+    /** Size of the buffer used while compressing. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data, offset, data.length - offset);
+        byte[] result = new byte[length];
+        try {
+            int n = 0;
+            while (n < length) {
+                int k = inflater.inflate(result, n, length - n);
+                if (k == 0 && (inflater.finished() || inflater.needsInput()
+                               || inflater.needsDictionary())) {
+                    break;
+                }
+                n += k;
+            }
+            if (n != length) {
+                throw new GitletException("Corrupt compressed object.");
+            }
+        } catch (DataFormatException excp) {
+            throw new GitletException("Corrupt compressed object.");
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+}
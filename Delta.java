@@ -0,0 +1,265 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** A blob stored as a stream of copy and insert instructions against
+ *  another blob, its base. The stream starts with the lengths of the
+ *  base and the result, each as a varint, followed by instructions:
+ *  COPY, a varint offset and a varint length, copies bytes of the base;
+ *  INSERT, a varint length and that many literal bytes, appends them.
+ *  A delta is stored as the byte MAGIC, the FORMAT version, its depth as
+ *  an int, the name of its file as a short length and UTF-8 bytes, the
+ *  ID of its base as ID_BYTES bytes and then its instruction stream.
+ *  Deltas written by Java serialization in older repositories are still
+ *  read.
+ *  @author Ethan Brown
+ */
+class Delta implements Serializable {
+
+    /** Version of serialized deltas, as computed for the original class,
+     *  so that deltas of older repositories stay readable. */
+    private static final long serialVersionUID = -3254693262854392496L;
+    /** First byte of an encoded delta. Serialized deltas start with 0xAC
+     *  instead. */
+    static final byte MAGIC = 'D';
+    /** Version of the delta encoding. */
+    static final byte FORMAT = 1;
+    /** Byte length of an ID within an encoded delta. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Byte length of the fixed part of an encoded delta: magic, format,
+     *  depth, name length and base. */
+    private static final int FIXED_SIZE = 2 + Integer.BYTES + Short.BYTES
+        + ID_BYTES;
+    /** Mask extracting an unsigned short. */
+    private static final int SHORT_MASK = 0xffff;
+    /** Longest chain of deltas allowed before a blob is stored whole. */
+    static final int MAX_DEPTH = 10;
+    /** Size of the base blocks indexed when computing a delta. */
+    static final int BLOCK = 16;
+    /** Opcode of an instruction copying a range of the base. */
+    static final int COPY = 1;
+    /** Opcode of an instruction inserting literal bytes. */
+    static final int INSERT = 0;
+    /** Multiplier of the rolling hash over BLOCK bytes. */
+    private static final int PRIME = 31;
+    /** Bits of payload in each byte of a varint. */
+    private static final int VARINT_BITS = 7;
+    /** Continuation flag of a varint byte. */
+    private static final int VARINT_MORE = 0x80;
+    /** Mask selecting the payload of a varint byte. */
+    private static final int VARINT_MASK = 0x7f;
+    /** Mask selecting the low byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** A delta for the file named NAME against the blob with ID BASE,
+     *  which is itself DEPTH - 1 deltas away from a whole blob, holding
+     *  INSTRUCTIONS. */
+    Delta(String name, String base, int depth, byte[] instructions) {
+        this.name = name;
+        this.base = base;
+        this.depth = depth;
+        this.instructions = instructions;
+    }
+
+    /** Returns the name of the file this delta describes. */
+    String getName() {
+        return this.name;
+    }
+
+    /** Returns the ID of the blob this delta applies to. */
+    String getBase() {
+        return this.base;
+    }
+
+    /** Returns the number of deltas to apply to reach this blob from a
+     *  whole one. */
+    int getDepth() {
+        return this.depth;
+    }
+
+    /** Returns this delta's instruction stream. */
+    byte[] getInstructions() {
+        return this.instructions;
+    }
+
+    /** Returns the binary encoding of this delta. */
+    byte[] encode() {
+        byte[] text = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(FIXED_SIZE + text.length
+                                             + instructions.length);
+        out.put(MAGIC).put(FORMAT).putInt(depth);
+        out.putShort((short) text.length).put(text);
+        out.put(Utils.fromHex(base)).put(instructions);
+        return out.array();
+    }
+
+    /** Returns the delta stored as DATA, either encoded or, in older
+     *  repositories, serialized. */
+    static Delta decode(byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return Utils.deserialize(data, Delta.class);
+        }
+        if (data.length < FIXED_SIZE || data[1] != FORMAT) {
+            throw new GitletException("Unknown delta format.");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, 2, data.length - 2);
+        int depth = in.getInt();
+        int length = in.getShort() & SHORT_MASK;
+        String name = new String(data, in.position(), length,
+                                 StandardCharsets.UTF_8);
+        int pos = in.position() + length;
+        String base = Utils.toHex(data, pos, ID_BYTES);
+        return new Delta(name, base, depth,
+                         Arrays.copyOfRange(data, pos + ID_BYTES,
+                                            data.length));
+    }
+
+    /** Returns an instruction stream that turns SOURCE into TARGET. */
+    static byte[] create(byte[] source, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= source.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(source, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, source.length);
+        writeVarint(out, target.length);
+        int pow = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            pow *= PRIME;
+        }
+        int literal = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer s = blocks.get(h);
+            if (s != null && matches(source, s, target, i, BLOCK)) {
+                int start = s;
+                int len = BLOCK;
+                while (start + len < source.length
+                        && i + len < target.length
+                        && source[start + len] == target[i + len]) {
+                    len += 1;
+                }
+                while (start > 0 && i > literal
+                        && source[start - 1] == target[i - 1]) {
+                    start -= 1;
+                    i -= 1;
+                    len += 1;
+                }
+                writeInsert(out, target, literal, i);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, len);
+                i += len;
+                literal = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - (target[i] & BYTE_MASK) * pow) * PRIME
+                    + (target[i + BLOCK] & BYTE_MASK);
+            }
+            i += 1;
+        }
+        writeInsert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying the instruction stream DELTA to
+     *  SOURCE. */
+    static byte[] apply(byte[] source, byte[] delta) {
+        int[] pos = new int[1];
+        if (readVarint(delta, pos) != source.length) {
+            throw new GitletException("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(source, offset, result, n, len);
+                n += len;
+            } else {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the rolling hash of the BLOCK bytes of DATA at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + (data[i] & BYTE_MASK);
+        }
+        return h;
+    }
+
+    /** Returns true iff the LEN bytes of A at I equal those of B at J. */
+    private static boolean matches(byte[] a, int i, byte[] b, int j,
+                                   int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes an INSERT of the bytes of DATA in [START, END) to OUT,
+     *  unless that range is empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data,
+                                    int start, int end) {
+        if (start < end) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(data, start, end - start);
+        }
+    }
+
+    /** Writes the non-negative VALUE to OUT as a varint. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= VARINT_MORE) {
+            out.write((value & VARINT_MASK) | VARINT_MORE);
+            value >>>= VARINT_BITS;
+        }
+        out.write(value);
+    }
+
+    /** Returns the varint in DATA at POS[0], advancing POS[0] past it. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & BYTE_MASK;
+            pos[0] += 1;
+            result |= (b & VARINT_MASK) << shift;
+            if (b < VARINT_MORE) {
+                return result;
+            }
+            shift += VARINT_BITS;
+        }
+    }
+
+    /** Name of the file this delta describes. */
+    private String name;
+    /** ID of the blob this delta applies to. */
+    private String base;
+    /** Number of deltas between this blob and a whole one. */
+    private int depth;
+    /** Copy and insert instructions producing this blob. */
+    private byte[] instructions;
+}
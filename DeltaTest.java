@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+/** Tests of deltas and of the delta chains ObjectStore builds from them.
+ *  @author Ethan Brown
+ */
+public class DeltaTest {
+
+    /** Empty texts round-trip, to and from either side. */
+    @Test
+    public void emptyTest() {
+        byte[] some = randomBytes(new Random(SEED), SIZE);
+        roundTrip(new byte[0], new byte[0]);
+        roundTrip(new byte[0], some);
+        roundTrip(some, new byte[0]);
+    }
+
+    /** A text against itself is a single copy. */
+    @Test
+    public void identicalTest() {
+        byte[] data = randomBytes(new Random(SEED), SIZE);
+        byte[] delta = roundTrip(data, data);
+        assertTrue(delta.length <= SMALL_DELTA);
+    }
+
+    /** Text added only before or after the base is inserted around a
+     *  copy of all of it. */
+    @Test
+    public void prefixSuffixTest() {
+        Random random = new Random(SEED);
+        byte[] base = randomBytes(random, SIZE);
+        byte[] extra = randomBytes(random, Delta.BLOCK - 1);
+        byte[] appended = concat(base, extra);
+        byte[] prepended = concat(extra, base);
+        assertTrue(roundTrip(base, appended).length
+                   <= SMALL_DELTA + INSERT_SIZE + extra.length);
+        assertTrue(roundTrip(base, prepended).length
+                   <= SMALL_DELTA + INSERT_SIZE + extra.length);
+        assertTrue(roundTrip(appended, base).length <= SMALL_DELTA);
+        assertTrue(roundTrip(prepended, base).length <= SMALL_DELTA);
+    }
+
+    /** Texts that are random edits of each other, or unrelated, and of
+     *  lengths around BLOCK, round-trip. */
+    @Test
+    public void randomTest() {
+        Random random = new Random(SEED);
+        for (int t = 0; t < TRIALS; t += 1) {
+            byte[] base = randomBytes(random, random.nextInt(SIZE));
+            roundTrip(base, edit(random, base));
+            roundTrip(base, randomBytes(random,
+                                        random.nextInt(2 * Delta.BLOCK)));
+        }
+    }
+
+    /** A delta reads back as stored, whether encoded or, as in older
+     *  repositories, serialized. */
+    @Test
+    public void encodeTest() {
+        byte[] base = randomBytes(new Random(SEED), SIZE);
+        Delta d = new Delta("dir/f.txt", Utils.sha1((Object) base), 2,
+                            Delta.create(base, edit(new Random(SEED), base)));
+        for (byte[] stored : new byte[][] { d.encode(), Utils.serialize(d) }) {
+            Delta read = Delta.decode(stored);
+            assertEquals(d.getName(), read.getName());
+            assertEquals(d.getBase(), read.getBase());
+            assertEquals(d.getDepth(), read.getDepth());
+            assertArrayEquals(d.getInstructions(), read.getInstructions());
+        }
+        assertEquals(Delta.MAGIC, d.encode()[0]);
+    }
+
+    /** A delta applied to a base of the wrong length is refused. */
+    @Test(expected = GitletException.class)
+    public void wrongBaseTest() {
+        byte[] base = randomBytes(new Random(SEED), SIZE);
+        Delta.apply(new byte[1], Delta.create(base, base));
+    }
+
+    /** Successive versions of a file are stored as deltas up to
+     *  MAX_DEPTH deep, the next one whole, and every version is rebuilt
+     *  from the store once no longer cached. Runs in a repository made in
+     *  the current directory, so is skipped within a repository. */
+    @Test
+    public void chainTest() throws IOException {
+        assumeFalse(new File(GITLET_DIR).exists());
+        try {
+            new File(Repository.OBJ_DIR).mkdirs();
+            Random random = new Random(SEED);
+            byte[][] versions = new byte[Delta.MAX_DEPTH + 2][];
+            String[] ids = new String[versions.length];
+            versions[0] = randomBytes(random, SIZE);
+            for (int i = 0; i < versions.length; i += 1) {
+                if (i > 0) {
+                    versions[i] = edit(random, versions[i - 1]);
+                }
+                Blob b = new Blob("f.txt", versions[i]);
+                ids[i] = b.getID();
+                ObjectStore.writeBlob(ids[i], b, i == 0 ? null : ids[i - 1]);
+            }
+            for (int i = 1; i <= Delta.MAX_DEPTH; i += 1) {
+                assertEquals(ObjectStore.DELTA, ObjectStore.typeOf(ids[i]));
+                assertEquals(i, Delta.decode(ObjectStore.readBytes(ids[i]))
+                             .getDepth());
+            }
+            assertEquals(ObjectStore.RAW,
+                         ObjectStore.typeOf(ids[versions.length - 1]));
+            ObjectStore.clearCaches();
+            for (int i = versions.length - 1; i >= 0; i -= 1) {
+                assertArrayEquals(versions[i],
+                                  ObjectStore.readBlob(ids[i]).getContents());
+            }
+            assertEquals("f.txt",
+                         ObjectStore.readBlob(ids[Delta.MAX_DEPTH]).getName());
+        } finally {
+            ObjectStore.clearCaches();
+            try (Stream<Path> files = Files.walk(Path.of(GITLET_DIR))) {
+                files.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** Asserts that the delta from SOURCE to TARGET turns SOURCE back
+     *  into TARGET, and returns it. */
+    private static byte[] roundTrip(byte[] source, byte[] target) {
+        byte[] delta = Delta.create(source, target);
+        assertArrayEquals(target, Delta.apply(source, delta));
+        return delta;
+    }
+
+    /** Returns DATA with a few random bytes inserted, deleted or
+     *  replaced, chosen by RANDOM. */
+    private static byte[] edit(Random random, byte[] data) {
+        byte[] result = data;
+        for (int e = random.nextInt(EDITS) + 1; e > 0; e -= 1) {
+            int at = random.nextInt(result.length + 1);
+            int len = random.nextInt(Delta.BLOCK) + 1;
+            int end = Math.min(result.length, at + len);
+            byte[] head = Arrays.copyOfRange(result, 0, at);
+            byte[] tail = Arrays.copyOfRange(result, at, result.length);
+            byte[] rest = Arrays.copyOfRange(result, end, result.length);
+            switch (random.nextInt(EDIT_KINDS)) {
+            case 0:
+                result = concat(head, concat(randomBytes(random, len), tail));
+                break;
+            case 1:
+                result = concat(head, rest);
+                break;
+            default:
+                result = concat(head, concat(randomBytes(random, end - at),
+                                             rest));
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** Returns N bytes chosen by RANDOM. */
+    private static byte[] randomBytes(Random random, int n) {
+        byte[] result = new byte[n];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** Returns the bytes of A followed by those of B. */
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /** The directory of a repository in the current directory. */
+    private static final String GITLET_DIR = ".gitlet";
+    /** Seed of the random texts. */
+    private static final long SEED = 7;
+    /** Typical length of a text. */
+    private static final int SIZE = 4096;
+    /** Number of random pairs of texts compared. */
+    private static final int TRIALS = 300;
+    /** Most edits made to a text. */
+    private static final int EDITS = 5;
+    /** Kinds of edit: insertion, deletion and replacement. */
+    private static final int EDIT_KINDS = 3;
+    /** Most bytes of a delta that copies its whole base: the two lengths
+     *  and one copy instruction, each varint at most two bytes. */
+    private static final int SMALL_DELTA = 8;
+    /** Bytes of an insert of fewer than 128 bytes before the bytes
+     *  themselves: its opcode and a one-byte length. */
+    private static final int INSERT_SIZE = 2;
+}
@@ -0,0 +1,460 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** Line-level comparison of texts. Texts are split into lines by an
+ *  Interner, which gives equal lines equal int IDs, so that lines are
+ *  compared once, by hashing, and every later comparison is of ints.
+ *  match then finds a common subsequence of two texts' lines. It strips
+ *  the common prefix and suffix and sets aside the lines found in only
+ *  one of the texts, which can match nothing. As in patience diff, it
+ *  then matches the longest run, in the same order in both texts, of
+ *  lines that occur once in each, which pins moved blocks and unique
+ *  lines such as declarations in place. The gaps between those are
+ *  compared with Myers' O(ND) algorithm in its linear-space form, which
+ *  splits each problem where searches from its two ends meet on an
+ *  optimal path. For edits of typical size, this leaves little for the
+ *  quadratic part to do. Where an edit is not typical, each split gives
+ *  up after COST_LIMIT rounds, or the square root of the lines compared
+ *  if that is more, at the point furthest along, which keeps the time
+ *  near-linear at the cost of a longer edit in the worst case.
+ *  @author Ethan Brown
+ */
+class Diff {
+
+    /** Fewest rounds of a split before it may give up. */
+    static final int COST_LIMIT = 256;
+
+    /** The lines of one text. */
+    static class Lines {
+
+        /** Lines of DATA starting at STARTS, STARTS having one more
+         *  element than there are lines, with IDS. */
+        Lines(byte[] data, int[] starts, int[] ids) {
+            this.data = data;
+            this.starts = starts;
+            this.ids = ids;
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return ids.length;
+        }
+
+        /** Returns the ID of line I. */
+        int id(int i) {
+            return ids[i];
+        }
+
+        /** Returns the IDs of all lines. */
+        int[] ids() {
+            return ids;
+        }
+
+        /** Returns the offset of the start of line I within the text,
+         *  where I may be size() for the end of the text. */
+        int start(int i) {
+            return starts[i];
+        }
+
+        /** Returns the text. */
+        byte[] data() {
+            return data;
+        }
+
+        /** The text. */
+        private final byte[] data;
+        /** Offsets of the starts of lines, then the length of DATA. */
+        private final int[] starts;
+        /** IDs of the lines. */
+        private final int[] ids;
+    }
+
+    /** A table of distinct lines, giving each an ID. */
+    static class Interner {
+
+        /** Initial number of slots of the hash table. */
+        private static final int INITIAL_SLOTS = 1 << 10;
+        /** Multiplier of the line hash. */
+        private static final int HASH_MULTIPLIER = 31;
+
+        /** Returns the lines of DATA, each ending after a newline or at
+         *  the end of DATA, with IDs from this table. */
+        Lines split(byte[] data) {
+            int n = 0;
+            for (byte b : data) {
+                if (b == '\n') {
+                    n += 1;
+                }
+            }
+            if (data.length > 0 && data[data.length - 1] != '\n') {
+                n += 1;
+            }
+            int[] starts = new int[n + 1];
+            int[] ids = new int[n];
+            int line = 0;
+            int start = 0;
+            int hash = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                hash = HASH_MULTIPLIER * hash + data[i];
+                if (data[i] == '\n' || i == data.length - 1) {
+                    starts[line] = start;
+                    ids[line] = intern(data, start, i + 1, hash);
+                    line += 1;
+                    start = i + 1;
+                    hash = 0;
+                }
+            }
+            starts[n] = data.length;
+            return new Lines(data, starts, ids);
+        }
+
+        /** Returns the number of distinct lines seen. */
+        int size() {
+            return count;
+        }
+
+        /** Returns the ID of the line DATA[START..END), whose hash is
+         *  HASH, adding it to the table if it is new. */
+        private int intern(byte[] data, int start, int end, int hash) {
+            int mask = slots.length - 1;
+            int s = mix(hash) & mask;
+            while (slots[s] != 0) {
+                int id = slots[s] - 1;
+                if (hashes[id] == hash && equal(id, data, start, end)) {
+                    return id;
+                }
+                s = (s + 1) & mask;
+            }
+            if (count == texts.length) {
+                texts = Arrays.copyOf(texts, 2 * count);
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+                hashes = Arrays.copyOf(hashes, 2 * count);
+            }
+            texts[count] = data;
+            starts[count] = start;
+            ends[count] = end;
+            hashes[count] = hash;
+            slots[s] = count + 1;
+            count += 1;
+            if (2 * count > slots.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        /** Returns true iff line ID is DATA[START..END). */
+        private boolean equal(int id, byte[] data, int start, int end) {
+            return Arrays.equals(texts[id], starts[id], ends[id],
+                                           data, start, end);
+        }
+
+        /** Doubles the number of slots. */
+        private void rehash() {
+            slots = new int[2 * slots.length];
+            int mask = slots.length - 1;
+            for (int id = 0; id < count; id += 1) {
+                int s = mix(hashes[id]) & mask;
+                while (slots[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                slots[s] = id + 1;
+            }
+        }
+
+        /** Returns HASH with its high bits folded into its low ones. */
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        /** Hash table of line IDs plus one, or 0 for an empty slot. */
+        private int[] slots = new int[INITIAL_SLOTS];
+        /** Number of distinct lines. */
+        private int count;
+        /** Text holding the first copy of each line, by ID. */
+        private byte[][] texts = new byte[INITIAL_SLOTS][];
+        /** Start of each line within its text, by ID. */
+        private int[] starts = new int[INITIAL_SLOTS];
+        /** End of each line within its text, by ID. */
+        private int[] ends = new int[INITIAL_SLOTS];
+        /** Hash of each line, by ID. */
+        private int[] hashes = new int[INITIAL_SLOTS];
+    }
+
+    /** Returns, for each line of A, the index of the line of B it is
+     *  matched with in a common subsequence of A and B, or -1 if it is
+     *  not matched. A and B hold line IDs from one Interner, of
+     *  which there are IDS. */
+    static int[] match(int[] a, int[] b, int ids) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        int lo = 0;
+        while (lo < a.length && lo < b.length && a[lo] == b[lo]) {
+            result[lo] = lo;
+            lo += 1;
+        }
+        int aHi = a.length;
+        int bHi = b.length;
+        while (aHi > lo && bHi > lo && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            result[aHi] = bHi;
+        }
+        int[] inA = new int[ids];
+        int[] inB = new int[ids];
+        for (int i = lo; i < aHi; i += 1) {
+            inA[a[i]] += 1;
+        }
+        for (int j = lo; j < bHi; j += 1) {
+            inB[b[j]] += 1;
+        }
+        int[] aIndex = kept(a, lo, aHi, inB);
+        int[] bIndex = kept(b, lo, bHi, inA);
+        int[] x = new int[aIndex.length];
+        int[] y = new int[bIndex.length];
+        for (int i = 0; i < x.length; i += 1) {
+            x[i] = a[aIndex[i]];
+        }
+        for (int j = 0; j < y.length; j += 1) {
+            y[j] = b[bIndex[j]];
+        }
+        int[] inner = new int[x.length];
+        Arrays.fill(inner, -1);
+        new Diff(x, y, inner).anchored(inA, inB);
+        for (int i = 0; i < x.length; i += 1) {
+            if (inner[i] != -1) {
+                result[aIndex[i]] = bIndex[inner[i]];
+            }
+        }
+        return result;
+    }
+
+    /** Returns the indices in [LO, HI) of the lines of S whose ID has a
+     *  nonzero count in OTHER. */
+    private static int[] kept(int[] s, int lo, int hi, int[] other) {
+        int n = 0;
+        for (int i = lo; i < hi; i += 1) {
+            if (other[s[i]] > 0) {
+                n += 1;
+            }
+        }
+        int[] result = new int[n];
+        n = 0;
+        for (int i = lo; i < hi; i += 1) {
+            if (other[s[i]] > 0) {
+                result[n] = i;
+                n += 1;
+            }
+        }
+        return result;
+    }
+
+    /** A comparison of A with B, recording in MATCHES the line of B
+     *  matched with each line of A. */
+    private Diff(int[] a, int[] b, int[] matches) {
+        this.a = a;
+        this.b = b;
+        this.matches = matches;
+        int diagonals = 2 * (a.length + b.length) + 2;
+        forward = new int[diagonals];
+        backward = new int[diagonals];
+        offset = a.length + b.length + 1;
+    }
+
+    /** Matches all of A with all of B, where ACOUNT and BCOUNT give the
+     *  number of times each line ID occurs in each. The lines that occur
+     *  once in each are candidate anchors; the longest run of them in the
+     *  same order in both is matched first, and the gaps between them
+     *  compared separately. */
+    private void anchored(int[] aCount, int[] bCount) {
+        int[] where = new int[aCount.length];
+        for (int j = 0; j < b.length; j += 1) {
+            where[b[j]] = j;
+        }
+        int[] anchorA = new int[a.length];
+        int[] anchorB = new int[a.length];
+        int n = 0;
+        for (int i = 0; i < a.length; i += 1) {
+            if (aCount[a[i]] == 1 && bCount[a[i]] == 1) {
+                anchorA[n] = i;
+                anchorB[n] = where[a[i]];
+                n += 1;
+            }
+        }
+        int[] chosen = increasing(anchorB, n);
+        int aLo = 0;
+        int bLo = 0;
+        for (int c : chosen) {
+            compare(aLo, anchorA[c], bLo, anchorB[c]);
+            matches[anchorA[c]] = anchorB[c];
+            aLo = anchorA[c] + 1;
+            bLo = anchorB[c] + 1;
+        }
+        compare(aLo, a.length, bLo, b.length);
+    }
+
+    /** Returns the indices, in order, of a longest increasing
+     *  subsequence of the first N elements of S, found by patience
+     *  sorting. */
+    private static int[] increasing(int[] s, int n) {
+        int[] tops = new int[n];
+        int[] previous = new int[n];
+        int piles = 0;
+        for (int i = 0; i < n; i += 1) {
+            int l = 0;
+            int h = piles;
+            while (l < h) {
+                int mid = (l + h) >>> 1;
+                if (s[tops[mid]] < s[i]) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+            previous[i] = l == 0 ? -1 : tops[l - 1];
+            tops[l] = i;
+            piles = Math.max(piles, l + 1);
+        }
+        int[] result = new int[piles];
+        for (int i = piles == 0 ? -1 : tops[piles - 1]; i != -1;
+             i = previous[i]) {
+            piles -= 1;
+            result[piles] = i;
+        }
+        return result;
+    }
+
+    /** Matches A[ALO..AHI) with B[BLO..BHI). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            matches[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            matches[aHi] = bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] split = split(aLo, aHi, bLo, bHi);
+        if (split != null) {
+            compare(aLo, aLo + split[0], bLo, bLo + split[1]);
+            compare(aLo + split[0], aHi, bLo + split[1], bHi);
+        }
+    }
+
+    /** Returns the point X, Y, relative to ALO and BLO, where the
+     *  forward and backward searches for an optimal path through
+     *  A[ALO..AHI) and B[BLO..BHI), whose first and last lines differ,
+     *  meet, or the point furthest along after the cost limit. Returns
+     *  null if the two have no line in common. */
+    private int[] split(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int limit = Math.max(COST_LIMIT, (int) Math.sqrt(n + m));
+        Arrays.fill(forward, offset - maxD - 1, offset + maxD + 2, -1);
+        Arrays.fill(backward, offset - maxD - 1, offset + maxD + 2, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int fLo = 0;
+        int fHi = 0;
+        int bkLo = 0;
+        int bkHi = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k = -d + fLo; k <= d - fHi; k += 2) {
+                int x = next(forward, k, d);
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                if (x > n) {
+                    fHi += 2;
+                } else if (y > m) {
+                    fLo += 2;
+                } else if (odd && reached(backward, delta - k, maxD)
+                           && x >= n - backward[offset + delta - k]) {
+                    return new int[] { x, y };
+                }
+            }
+            for (int k = -d + bkLo; k <= d - bkHi; k += 2) {
+                int x = next(backward, k, d);
+                int y = x - k;
+                while (x < n && y < m
+                       && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                if (x > n) {
+                    bkHi += 2;
+                } else if (y > m) {
+                    bkLo += 2;
+                } else if (!odd && reached(forward, delta - k, maxD)) {
+                    int fx = forward[offset + delta - k];
+                    if (fx >= n - x) {
+                        return new int[] { fx, fx - delta + k };
+                    }
+                }
+            }
+            if (d >= limit) {
+                return furthest(d, fLo, fHi, n, m);
+            }
+        }
+        return null;
+    }
+
+    /** Returns true iff the search with furthest points V has reached
+     *  diagonal K, where the furthest diagonals are -MAXD and MAXD. */
+    private boolean reached(int[] v, int k, int maxD) {
+        return Math.abs(k) <= maxD && v[offset + k] != -1;
+    }
+
+    /** Returns the X from which the search with furthest points V steps
+     *  along diagonal K in round D. */
+    private int next(int[] v, int k, int d) {
+        if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+            return v[offset + k + 1];
+        }
+        return v[offset + k - 1] + 1;
+    }
+
+    /** Returns, as for split, the point within N by M lines reached by
+     *  the forward search in round D, on the diagonals from -D + LO to
+     *  D - HI, that is furthest from the start. */
+    private int[] furthest(int d, int lo, int hi, int n, int m) {
+        int[] best = { 0, 0 };
+        for (int k = -d + lo; k <= d - hi; k += 2) {
+            int x = forward[offset + k];
+            int y = x - k;
+            if (x <= n && y <= m && x + y > best[0] + best[1]) {
+                best[0] = x;
+                best[1] = y;
+            }
+        }
+        return best[0] + best[1] == 0 ? null : best;
+    }
+
+    /** Line IDs of the first text. */
+    private final int[] a;
+    /** Line IDs of the second text. */
+    private final int[] b;
+    /** Matched line of B for each line of A, or -1. */
+    private final int[] matches;
+    /** Furthest X reached on each diagonal by the forward search, offset
+     *  by OFFSET. */
+    private final int[] forward;
+    /** Furthest distance from the end reached on each diagonal by the
+     *  backward search, offset by OFFSET. */
+    private final int[] backward;
+    /** Index of diagonal 0 in FORWARD and BACKWARD. */
+    private final int offset;
+}
@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/** A read-only, memory-mapped table of sorted object IDs, each paired
+ *  with a long value. A fan-out table of 256 cumulative counts, indexed
+ *  by the first byte of an ID, narrows every lookup to the IDs sharing
+ *  that byte before a binary search. The file consists of MAGIC,
+ *  VERSION, the fan-out table, the raw 20-byte IDs in ascending order
+ *  and finally the values in the same order.
+ *  @author Ethan Brown
+ */
+class IdTable {
+
+    /** Marks a file as an ID table ("GIDX"). */
+    static final int MAGIC = 0x47494458;
+    /** Version of the on-disk format. */
+    static final int VERSION = 1;
+    /** Number of entries in the fan-out table. */
+    static final int FANOUT = 256;
+    /** Byte length of a raw ID. */
+    static final int ID_SIZE = 20;
+    /** Byte offset of the fan-out table. */
+    private static final int FANOUT_OFFSET = 8;
+    /** Byte offset of the first ID. */
+    private static final int IDS_OFFSET = FANOUT_OFFSET + 4 * FANOUT;
+    /** Mask selecting the low byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** A table over the mapped file contents RAW. */
+    private IdTable(ByteBuffer raw) {
+        data = raw;
+        size = raw.getInt(FANOUT_OFFSET + 4 * (FANOUT - 1));
+    }
+
+    /** Returns the table stored in F, or null if F does not exist. */
+    static IdTable open(File f) {
+        if (!f.exists()) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer raw =
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (raw.limit() < IDS_OFFSET || raw.getInt(0) != MAGIC
+                    || raw.getInt(4) != VERSION) {
+                throw new GitletException("Corrupt index " + f + ".");
+            }
+            return new IdTable(raw);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a table mapping each of the hexadecimal IDS, which must be
+     *  sorted, to the corresponding entry of VALUES into F. The new table
+     *  replaces any old one atomically. */
+    static void write(File f, List<String> ids, long[] values) {
+        int n = ids.size();
+        ByteBuffer out = ByteBuffer.allocate(IDS_OFFSET
+                + n * (ID_SIZE + Long.BYTES));
+        out.putInt(MAGIC).putInt(VERSION);
+        int[] fanout = new int[FANOUT];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            out.putInt(total);
+        }
+        for (String id : ids) {
+            out.put(Utils.fromHex(id));
+        }
+        for (int i = 0; i < n; i += 1) {
+            out.putLong(values[i]);
+        }
+        Utils.writeAtomically(f, out.array());
+        Transaction.created(f);
+    }
+
+    /** Returns the number of IDs in this table. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the index of the full hexadecimal ID, or -1 if absent. */
+    int find(String id) {
+        if (id.length() != 2 * ID_SIZE) {
+            return -1;
+        }
+        int[] range = range(id);
+        return range[0] < range[1] ? range[0] : -1;
+    }
+
+    /** Returns the half-open range [lo, hi) of indices of the IDs that
+     *  begin with the non-empty hexadecimal PREFIX. */
+    int[] range(String prefix) {
+        if (prefix.length() == 1) {
+            int nibble = Integer.parseInt(prefix, 16);
+            int lo = nibble == 0 ? 0 : fanout((nibble << 4) - 1);
+            return new int[] { lo, fanout((nibble << 4) | (BYTE_MASK >> 4)) };
+        }
+        int first = Integer.parseInt(prefix.substring(0, 2), 16);
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first);
+        byte[] key = Utils.fromHex(prefix.length() % 2 == 0
+                                   ? prefix : prefix + "0");
+        int start = search(key, lo, hi);
+        if (prefix.length() % 2 == 1) {
+            key[key.length - 1] |= BYTE_MASK >> 4;
+        } else {
+            key = increment(key);
+            if (key == null) {
+                return new int[] { start, hi };
+            }
+        }
+        int end = search(key, start, hi);
+        if (prefix.length() % 2 == 1) {
+            while (end < hi && compare(key, end) == 0) {
+                end += 1;
+            }
+        }
+        return new int[] { start, end };
+    }
+
+    /** Returns the hexadecimal ID at index I. */
+    String idAt(int i) {
+        byte[] raw = new byte[ID_SIZE];
+        for (int k = 0; k < ID_SIZE; k += 1) {
+            raw[k] = data.get(IDS_OFFSET + i * ID_SIZE + k);
+        }
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the value paired with the ID at index I. */
+    long valueAt(int i) {
+        return data.getLong(IDS_OFFSET + size * ID_SIZE + i * Long.BYTES);
+    }
+
+    /** Returns the cumulative count of IDs whose first byte is at most
+     *  B. */
+    private int fanout(int b) {
+        return data.getInt(FANOUT_OFFSET + 4 * b);
+    }
+
+    /** Returns the first index in [LO, HI) whose ID is not less than
+     *  KEY when compared on KEY's length, or HI if there is none. */
+    private int search(byte[] key, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(key, mid) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compares KEY against the first KEY.length bytes of the ID at
+     *  index I, treating bytes as unsigned. */
+    private int compare(byte[] key, int i) {
+        int base = IDS_OFFSET + i * ID_SIZE;
+        for (int k = 0; k < key.length; k += 1) {
+            int cmp = Integer.compare(key[k] & BYTE_MASK,
+                                      data.get(base + k) & BYTE_MASK);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the smallest byte string of KEY's length greater than
+     *  KEY, or null if KEY is all ones. */
+    private static byte[] increment(byte[] key) {
+        byte[] result = key.clone();
+        for (int k = result.length - 1; k >= 0; k -= 1) {
+            if ((result[k] & BYTE_MASK) != BYTE_MASK) {
+                result[k] += 1;
+                return result;
+            }
+            result[k] = 0;
+        }
+        return null;
+    }
+
+    /** Mapped contents of the table file. */
+    private final ByteBuffer data;
+    /** Number of IDs in the table. */
+    private final int size;
+}
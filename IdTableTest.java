@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of IdTable lookups by full ID and by prefix.
+ *  @author Ethan Brown
+ */
+public class IdTableTest {
+
+    /** Writes the table of IDS, each paired with its index times
+     *  VALUE_STEP, into a scratch directory. */
+    @BeforeClass
+    public static void setUp() throws IOException {
+        dir = Files.createTempDirectory("gitlet-idtable").toFile();
+        long[] values = new long[IDS.size()];
+        for (int i = 0; i < values.length; i += 1) {
+            values[i] = i * VALUE_STEP;
+        }
+        IdTable.write(new File(dir, "table"), IDS, values);
+        table = IdTable.open(new File(dir, "table"));
+    }
+
+    /** Removes the scratch directory. */
+    @AfterClass
+    public static void tearDown() {
+        Utils.deleteTree(dir);
+    }
+
+    /** Every ID is found at its index, with its value, and absent or
+     *  partial IDs are not found. */
+    @Test
+    public void findTest() {
+        assertEquals(IDS.size(), table.size());
+        for (int i = 0; i < IDS.size(); i += 1) {
+            assertEquals(i, table.find(IDS.get(i)));
+            assertEquals(IDS.get(i), table.idAt(i));
+            assertEquals(i * VALUE_STEP, table.valueAt(i));
+        }
+        assertEquals(-1, table.find(Utils.sha1("absent")));
+        assertEquals(-1, table.find(IDS.get(0).substring(0, 2)));
+        assertNull(IdTable.open(new File(dir, "missing")));
+    }
+
+    /** Prefixes of every length, odd or even, select exactly the IDs
+     *  beginning with them, including at either end of the table. */
+    @Test
+    public void rangeTest() {
+        ArrayList<String> prefixes = new ArrayList<>(List.of(
+            "0", "00", "0f", "1", "10", "10f", "a", "ab", "abc", "abc1",
+            "abd", "ac", "f", "ff", "fff", "5", "55", "abcf"));
+        for (String id : IDS) {
+            for (int n = 1; n <= id.length(); n += 1) {
+                prefixes.add(id.substring(0, n));
+            }
+        }
+        for (String prefix : prefixes) {
+            int[] range = table.range(prefix);
+            int lo = 0;
+            while (lo < IDS.size() && IDS.get(lo).compareTo(prefix) < 0) {
+                lo += 1;
+            }
+            int hi = lo;
+            while (hi < IDS.size() && IDS.get(hi).startsWith(prefix)) {
+                hi += 1;
+            }
+            assertEquals(prefix, lo, range[0]);
+            assertEquals(prefix, hi, range[1]);
+        }
+    }
+
+    /** Sorted IDs sharing prefixes of various lengths, and IDs at the
+     *  extremes. */
+    private static final List<String> IDS = List.of(
+        "0000000000000000000000000000000000000000",
+        "00ff000000000000000000000000000000000000",
+        "0f12000000000000000000000000000000000000",
+        "1000000000000000000000000000000000000000",
+        "10f0000000000000000000000000000000000000",
+        "10ff000000000000000000000000000000000000",
+        "abc1000000000000000000000000000000000000",
+        "abc1000000000000000000000000000000000001",
+        "abc2000000000000000000000000000000000000",
+        "abcfffffffffffffffffffffffffffffffffffff",
+        "abd0000000000000000000000000000000000000",
+        "ffffffffffffffffffffffffffffffffffffffff");
+    /** Difference between the values of successive IDs. */
+    private static final long VALUE_STEP = 1L << 33;
+
+    /** Directory holding the table. */
+    private static File dir;
+    /** The table of IDS. */
+    private static IdTable table;
+}
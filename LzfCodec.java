@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A fast LZ77 codec in the style of LZF, trading compression ratio for
+ *  speed. The output is a sequence of runs. A control byte below
+ *  MAX_LITERAL introduces that many plus one literal bytes. Otherwise its
+ *  top three bits hold a match length less two (with 7 meaning another
+ *  length byte follows) and its low five bits, with the next byte, hold
+ *  the distance back to the match less one.
+ *  @author Ethan Brown
+ */
+class LzfCodec implements Codec {
+
+    /** The id recorded in headers for this codec. */
+    static final int ID = 2;
+    /** Longest run of literals under one control byte. */
+    static final int MAX_LITERAL = 32;
+    /** Farthest distance back a match may reach. */
+    static final int MAX_OFFSET = 1 << 13;
+    /** Shortest match worth encoding. */
+    static final int MIN_MATCH = 3;
+    /** Length code meaning that an extra length byte follows. */
+    private static final int LONG_MATCH = 7;
+    /** Longest match that can be encoded. */
+    static final int MAX_MATCH = LONG_MATCH + 2 + 255;
+    /** Bits used to index the hash table of recent positions. */
+    private static final int HASH_BITS = 14;
+    /** Multiplier used to hash three bytes into the table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+    /** Shift of the length code within a control byte. */
+    private static final int LENGTH_SHIFT = 5;
+    /** Mask selecting the low byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "lzf";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        int n = data.length;
+        byte[] out = new byte[n + n / MAX_LITERAL + 2];
+        int[] table = new int[1 << HASH_BITS];
+        int ip = 0;
+        int op = 0;
+        int literal = 0;
+        while (ip + MIN_MATCH <= n) {
+            int key = (data[ip] & BYTE_MASK) << 16
+                | (data[ip + 1] & BYTE_MASK) << 8 | (data[ip + 2] & BYTE_MASK);
+            int slot = (key * HASH_MULTIPLIER) >>> (Integer.SIZE - HASH_BITS);
+            int ref = table[slot] - 1;
+            table[slot] = ip + 1;
+            if (ref < 0 || ip - ref > MAX_OFFSET || data[ref] != data[ip]
+                    || data[ref + 1] != data[ip + 1]
+                    || data[ref + 2] != data[ip + 2]) {
+                ip += 1;
+                continue;
+            }
+            int len = MIN_MATCH;
+            int maxLen = Math.min(MAX_MATCH, n - ip);
+            while (len < maxLen && data[ref + len] == data[ip + len]) {
+                len += 1;
+            }
+            op = literals(data, literal, ip, out, op);
+            int off = ip - ref - 1;
+            int code = len - 2;
+            if (code < LONG_MATCH) {
+                out[op++] = (byte) (code << LENGTH_SHIFT | off >> 8);
+            } else {
+                out[op++] = (byte) (LONG_MATCH << LENGTH_SHIFT | off >> 8);
+                out[op++] = (byte) (code - LONG_MATCH);
+            }
+            out[op++] = (byte) off;
+            ip += len;
+            literal = ip;
+        }
+        op = literals(data, literal, n, out, op);
+        return Arrays.copyOf(out, op);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) {
+        byte[] out = new byte[length];
+        int ip = offset;
+        int op = 0;
+        try {
+            while (op < length) {
+                int ctrl = data[ip++] & BYTE_MASK;
+                if (ctrl < MAX_LITERAL) {
+                    System.arraycopy(data, ip, out, op, ctrl + 1);
+                    ip += ctrl + 1;
+                    op += ctrl + 1;
+                    continue;
+                }
+                int len = ctrl >> LENGTH_SHIFT;
+                if (len == LONG_MATCH) {
+                    len += data[ip++] & BYTE_MASK;
+                }
+                len += 2;
+                int ref = op - ((ctrl & (MAX_LITERAL - 1)) << 8)
+                    - (data[ip++] & BYTE_MASK) - 1;
+                for (int k = 0; k < len; k += 1) {
+                    out[op++] = out[ref++];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException excp) {
+            throw new GitletException("Corrupt compressed object.");
+        }
+        return out;
+    }
+
+    /** Copies the bytes of DATA in [START, END) to OUT at OP as literal
+     *  runs, returning the position in OUT after them. */
+    private static int literals(byte[] data, int start, int end,
+                                byte[] out, int op) {
+        while (start < end) {
+            int run = Math.min(MAX_LITERAL, end - start);
+            out[op++] = (byte) (run - 1);
+            System.arraycopy(data, start, out, op, run);
+            op += run;
+            start += run;
+        }
+        return op;
+    }
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the LZF codec and of how Codec stores what it compresses.
+ *  @author Ethan Brown
+ */
+public class LzfCodecTest {
+
+    /** Empty input compresses to nothing and is stored uncompressed. */
+    @Test
+    public void emptyTest() {
+        assertEquals(0, roundTrip(new byte[0]).length);
+        byte[] stored = Codec.encode(LZF, ObjectStore.RAW, new byte[0]);
+        assertEquals(Codec.NONE, stored[Codec.CODEC_OFFSET]);
+        assertEquals(0, Codec.decode(stored).length);
+    }
+
+    /** Literal runs are split at MAX_LITERAL bytes, each behind its own
+     *  control byte. */
+    @Test
+    public void literalTest() {
+        Random random = new Random(SEED);
+        int[] lengths = { 1, LzfCodec.MAX_LITERAL - 1, LzfCodec.MAX_LITERAL,
+                          LzfCodec.MAX_LITERAL + 1, 4 * LzfCodec.MAX_LITERAL };
+        for (int n : lengths) {
+            byte[] data = distinctBytes(random, n);
+            int runs = (n + LzfCodec.MAX_LITERAL - 1) / LzfCodec.MAX_LITERAL;
+            assertEquals(n + runs, roundTrip(data).length);
+        }
+    }
+
+    /** Incompressible input round-trips, and Codec stores it
+     *  uncompressed rather than larger. */
+    @Test
+    public void incompressibleTest() {
+        byte[] data = new byte[LARGE];
+        new Random(SEED).nextBytes(data);
+        assertTrue(roundTrip(data).length >= data.length);
+        byte[] stored = Codec.encode(LZF, ObjectStore.RAW, data);
+        assertEquals(Codec.NONE, stored[Codec.CODEC_OFFSET]);
+        assertEquals(Codec.HEADER_SIZE + data.length, stored.length);
+        assertArrayEquals(data, Codec.decode(stored));
+    }
+
+    /** Compressible input is stored compressed, and decoded by the codec
+     *  named in its header. */
+    @Test
+    public void encodeTest() {
+        byte[] data = new byte[LARGE];
+        byte[] stored = Codec.encode(LZF, ObjectStore.RAW, data);
+        assertEquals(LzfCodec.ID, stored[Codec.CODEC_OFFSET]);
+        assertEquals(ObjectStore.RAW, Codec.type(stored, stored.length));
+        assertTrue(stored.length < data.length);
+        assertArrayEquals(data, Codec.decode(stored));
+    }
+
+    /** A repeated byte is covered by matches of MAX_MATCH bytes, and runs
+     *  of every length around the short and long match encodings
+     *  round-trip. */
+    @Test
+    public void longestMatchTest() {
+        int matches = 5;
+        byte[] data = new byte[1 + matches * LzfCodec.MAX_MATCH];
+        assertEquals(ONE_LITERAL_SIZE + matches * LONG_MATCH_SIZE,
+                     roundTrip(data).length);
+        for (int n = 0; n < 2 * LzfCodec.MAX_MATCH + LzfCodec.MIN_MATCH;
+             n += 1) {
+            roundTrip(new byte[n]);
+        }
+    }
+
+    /** A match reaches back exactly MAX_OFFSET bytes, but no farther. */
+    @Test
+    public void farthestMatchTest() {
+        Random random = new Random(SEED);
+        byte[] block = distinctBytes(random, BLOCK);
+        int near = roundTrip(repeat(block, LzfCodec.MAX_OFFSET)).length;
+        int far = roundTrip(repeat(block, LzfCodec.MAX_OFFSET + 1)).length;
+        assertTrue(near + BLOCK / 2 < far);
+    }
+
+    /** Mixtures of random and repetitive bytes round-trip. */
+    @Test
+    public void randomTest() {
+        Random random = new Random(SEED);
+        for (int t = 0; t < TRIALS; t += 1) {
+            byte[] data = new byte[random.nextInt(LARGE)];
+            int i = 0;
+            while (i < data.length) {
+                int len = Math.min(data.length - i,
+                                   random.nextInt(LzfCodec.MAX_MATCH) + 1);
+                if (random.nextBoolean()) {
+                    byte[] run = new byte[len];
+                    random.nextBytes(run);
+                    System.arraycopy(run, 0, data, i, len);
+                } else if (i > 0) {
+                    int from = random.nextInt(i);
+                    for (int k = 0; k < len; k += 1) {
+                        data[i + k] = data[from + k];
+                    }
+                }
+                i += len;
+            }
+            roundTrip(data);
+        }
+    }
+
+    /** Truncated compressed data is reported as corrupt. */
+    @Test(expected = GitletException.class)
+    public void truncatedTest() {
+        byte[] data = new byte[LARGE];
+        byte[] packed = LZF.compress(data);
+        LZF.decompress(Arrays.copyOf(packed, packed.length / 2), 0,
+                       data.length);
+    }
+
+    /** Asserts that DATA compressed and decompressed by LZF is DATA, and
+     *  returns its compressed form. */
+    private static byte[] roundTrip(byte[] data) {
+        byte[] packed = LZF.compress(data);
+        byte[] padded = new byte[OFFSET + packed.length];
+        System.arraycopy(packed, 0, padded, OFFSET, packed.length);
+        assertArrayEquals(data, LZF.decompress(padded, OFFSET, data.length));
+        return packed;
+    }
+
+    /** Returns N distinct bytes chosen by RANDOM, so that they hold no
+     *  matches. N is at most 256. */
+    private static byte[] distinctBytes(Random random, int n) {
+        byte[] result = new byte[n];
+        int step = random.nextInt(Byte.MAX_VALUE) * 2 + 1;
+        int start = random.nextInt(1 << Byte.SIZE);
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (byte) (start + i * step);
+        }
+        return result;
+    }
+
+    /** Returns BLOCK followed by zeros, then BLOCK again starting
+     *  DISTANCE bytes after the first. */
+    private static byte[] repeat(byte[] block, int distance) {
+        byte[] result = new byte[distance + block.length];
+        System.arraycopy(block, 0, result, 0, block.length);
+        System.arraycopy(block, 0, result, distance, block.length);
+        return result;
+    }
+
+    /** The codec under test. */
+    private static final Codec LZF = Codec.forId(LzfCodec.ID);
+    /** Bytes of a run of one literal: its control byte and the byte. */
+    private static final int ONE_LITERAL_SIZE = 2;
+    /** Bytes of a match encoded with an extra length byte. */
+    private static final int LONG_MATCH_SIZE = 3;
+    /** Seed of the random inputs. */
+    private static final long SEED = 11;
+    /** Length of large inputs. */
+    private static final int LARGE = 1 << 16;
+    /** Length of the block repeated at a distance. */
+    private static final int BLOCK = 64;
+    /** Number of random inputs. */
+    private static final int TRIALS = 50;
+    /** Position at which compressed data is placed before decompressing
+     *  it, as behind an object header. */
+    private static final int OFFSET = Codec.HEADER_SIZE;
+}
@@ -1,7 +1,11 @@
 package gitlet;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Ethan Brown
@@ -9,16 +13,72 @@ import java.util.ArrayList;
 public class Main {
     /** FILE representing location of gitlet directory in CWD. */
     static final File GITLET_DIRECTORY = new File(".gitlet");
+    /** System property that, when true, reports object cache statistics
+     *  on the standard error once a command finishes. */
+    static final String STATS_PROPERTY = "gitlet.stats";
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> .... The command runs in the repository's
+     *  daemon if one is running, and in this process otherwise. */
     public static void main(String... args) {
+        int status = Daemon.forward(args);
+        if (status == Daemon.NO_DAEMON) {
+            status = run(args);
+        }
+        System.exit(status);
+    }
+    /** Runs the command given by ARGS in this process, reporting errors
+     *  on the standard output, and returns its exit status. The writes
+     *  of the command form one Transaction, committed even when it ends
+     *  with an error message, as the files written by then were always
+     *  kept, but dropped if it fails unexpectedly. Commands run holding
+     *  the RepoLock, except that those in READ_ONLY never take it, and
+     *  run on a snapshot, so that they never hold up a writer. */
+    static int run(String... args) {
+        String command = args.length == 0 ? "" : args[0];
         try {
+            if (GITLET_DIRECTORY.isDirectory()
+                    && !command.equals("daemon")) {
+                if (READ_ONLY.contains(command) && upToDate()) {
+                    Transaction.beginSnapshot();
+                } else {
+                    RepoLock.acquire();
+                    Transaction.begin();
+                }
+            }
             new Main(args);
         } catch (GitletException exc) {
             System.out.println(exc.getMessage());
+        } catch (RuntimeException | Error excp) {
+            Transaction.abort();
+            RepoLock.release();
+            throw excp;
+        }
+        Transaction.commit();
+        RepoLock.release();
+        if (Boolean.getBoolean(STATS_PROPERTY)) {
+            System.err.println(ObjectStore.cacheStats());
         }
-        System.exit(0);
+        return 0;
+    }
+    /** Returns true iff the repository has every file that commands
+     *  create when first run on a repository of an older version, and no
+     *  journal that a crashed writer left to recover, so that a read-only
+     *  command has nothing to write. */
+    private static boolean upToDate() {
+        return new File(Repository.HEAD_FILE).isFile()
+            && new File(CommitGraph.GRAPH_FILE).isFile()
+            && !new File(StagingIndex.LEGACY_DIR).exists()
+            && !new File(Transaction.JOURNAL).exists();
     }
+    /** Commands that change nothing but caches, which they may leave
+     *  alone, and so run without the RepoLock. */
+    static final Set<String> READ_ONLY =
+        Set.of("log", "global-log", "find", "status");
+    /** Date formats accepted by the --since and --until options of log,
+     *  most specific first. */
+    static final String[] DATE_FORMATS = {
+        "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd",
+    };
     /** Checks ARGS and opens and runs necessary methods. */
     Main(String[] args) {
         if (args.length == 0) {
@@ -33,11 +93,10 @@ public class Main {
             }
             Repository repo = Repository.getRepo();
             if (args[0].equals("add")) {
-                File f = new File(repo.getWorkingDirectory() + "/" + args[1]);
-                if (!f.exists()) {
-                    throw new GitletException("File does not exist.");
+                if (args.length < 2) {
+                    throw new GitletException("Incorrect operands.");
                 }
-                repo.add(f);
+                repo.add(Arrays.asList(args).subList(1, args.length));
             } else if (args[0].equals("commit")) {
                 if (args.length == 1 || args[1].equals("")) {
                     throw new GitletException("Please enter a commit message.");
@@ -55,14 +114,22 @@ public class Main {
                     repo.checkout(args[1], args[3]);
                 }
             } else if (args[0].equals("log")) {
-                repo.log(repo.getHEAD(), new ArrayList<>());
+                log(repo, args);
             } else if (args[0].equals("rm")) {
                 File f = new File(repo.getWorkingDirectory() + "/" + args[1]);
                 repo.remove(f);
             } else if (args[0].equals("global-log")) {
                 repo.global();
             } else if (args[0].equals("find")) {
-                repo.find(args[1]);
+                if (args.length == 3 && args[1].equals("--word")) {
+                    repo.findWord(args[2]);
+                } else if (args.length == 3 && args[1].equals("--grep")) {
+                    repo.grep(args[2]);
+                } else {
+                    repo.find(args[1]);
+                }
+            } else if (args[0].equals("reindex")) {
+                MessageIndex.rebuild();
             } else if (args[0].equals("status")) {
                 repo.status();
             } else if (args[0].equals("branch")) {
@@ -73,12 +140,60 @@ public class Main {
                 repo.reset(args[1]);
             } else if (args[0].equals("merge")) {
                 repo.merge(args[1]);
+            } else if (args[0].equals("pack")) {
+                ObjectStore.pack();
+            } else if (args[0].equals("pack-refs")) {
+                Refs.pack();
+            } else if (args[0].equals("migrate")) {
+                ObjectStore.migrate();
+            } else if (args[0].equals("daemon")) {
+                if (args.length != 1) {
+                    throw new GitletException("No daemon is running.");
+                }
+                Daemon.serve();
             } else {
                 throw new GitletException("No command with that name exists.");
             }
         }
     }
+    /** Runs the log command given by ARGS in REPO: log [-n COUNT]
+     *  [--since DATE] [--until DATE]. */
+    private static void log(Repository repo, String[] args) {
+        int limit = Integer.MAX_VALUE;
+        Date since = null;
+        Date until = null;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new GitletException("Incorrect operands.");
+            }
+            if (args[i].equals("-n")) {
+                try {
+                    limit = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException excp) {
+                    throw new GitletException("Incorrect operands.");
+                }
+            } else if (args[i].equals("--since")) {
+                since = parseDate(args[i + 1]);
+            } else if (args[i].equals("--until")) {
+                until = parseDate(args[i + 1]);
+            } else {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
+        repo.log(repo.getHEAD(), limit, since, until);
+    }
+    /** Returns the date denoted by TEXT, in local time, in one of the
+     *  DATE_FORMATS. */
+    private static Date parseDate(String text) {
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat parser = new SimpleDateFormat(format);
+            parser.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date result = parser.parse(text, position);
+            if (result != null && position.getIndex() == text.length()) {
+                return result;
+            }
+        }
+        throw new GitletException("Incorrect operands.");
+    }
 }
-
-
-
@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** An on-disk index from commit messages to the IDs of the commits that
+ *  carry them. Three kinds of keys are indexed for every commit: its
+ *  whole message, each word of the message, and each three-character
+ *  substring (trigram) of the message, the last two in lower case.
+ *  Postings live in buckets under INDEX_DIR, named by the first
+ *  BUCKET_DIGITS of the SHA-1 of their key, one "KEYHASH ID" line per
+ *  posting. Each bucket has two files: a sorted part, named with
+ *  SORTED_SUFFIX, whose lines are in order of key hash and, for each
+ *  key, oldest first, and a log of up to MAX_UNSORTED lines appended
+ *  since. A lookup binary-searches the sorted part, reading only the
+ *  lines of its key and a logarithmic number of others, then scans the
+ *  log, so that its cost does not grow with the history beyond the
+ *  number of commits it finds. Adding a commit appends to a few logs;
+ *  a log that would grow past MAX_UNSORTED is merged into its sorted
+ *  part instead, and rebuild writes only sorted parts. The index of an
+ *  older repository, which has only logs, is read as it is.
+ *
+ *  Logs are appended to in place rather than through the Transaction;
+ *  an append first cuts off any partial line that a crash left at the
+ *  end of the log, and a lookup skips one that a writer is still
+ *  appending, so that postings always stay aligned on LINE_LENGTH. A
+ *  log is only emptied once its merged sorted part is synced.
+ *  @author Ethan Brown
+ */
+class MessageIndex {
+
+    /** Location of the index within the .gitlet directory. */
+    static final String INDEX_DIR = ".gitlet/msgindex/";
+    /** Number of hexadecimal digits of a key hash naming its bucket. */
+    static final int BUCKET_DIGITS = 3;
+    /** Length of the substrings indexed for substring search. */
+    static final int GRAM = 3;
+    /** Suffix of the sorted part of a bucket. */
+    static final String SORTED_SUFFIX = ".s";
+    /** Most postings in the log of a bucket. */
+    static final int MAX_UNSORTED = 1024;
+    /** Byte length of one posting line. */
+    private static final int LINE_LENGTH = 2 * Utils.UID_LENGTH + 2;
+
+    /** Returns true iff this repository has a message index. */
+    static boolean exists() {
+        return new File(INDEX_DIR).isDirectory();
+    }
+
+    /** Records that commit ID has MESSAGE. Does nothing in repositories
+     *  without an index, so that a partial index is never used. */
+    static void add(String id, String message) {
+        if (!exists()) {
+            return;
+        }
+        HashMap<String, StringBuilder> buckets = new HashMap<>();
+        post(buckets, id, message);
+        append(buckets);
+    }
+
+    /** Rebuilds the index from every commit in the commit graph. */
+    static void rebuild() {
+        File dir = new File(INDEX_DIR);
+        Utils.deleteTree(dir);
+        dir.mkdir();
+        CommitGraph graph = CommitGraph.load();
+        HashMap<String, StringBuilder> buckets = new HashMap<>();
+        for (int p = 0; p < graph.size(); p += 1) {
+            String id = graph.idAt(p);
+            post(buckets, id, ObjectStore.readCommit(id).getMessage());
+        }
+        for (Map.Entry<String, StringBuilder> e : buckets.entrySet()) {
+            writeSorted(e.getKey(), lines(e.getValue().toString()));
+        }
+    }
+
+    /** Returns the IDs of the commits whose message is exactly
+     *  MESSAGE. */
+    static List<String> exact(String message) {
+        return lookup(messageKey(message));
+    }
+
+    /** Returns the IDs of the commits whose message contains WORD as a
+     *  whole word, ignoring case. */
+    static List<String> word(String word) {
+        return lookup("w:" + word.toLowerCase(Locale.ROOT));
+    }
+
+    /** Returns the IDs of the commits whose message may contain TEXT,
+     *  ignoring case: those that contain every trigram of TEXT. Callers
+     *  must check the candidates, and TEXT must be at least GRAM long. */
+    static List<String> candidates(String text) {
+        List<String> result = null;
+        for (String gram : grams(text)) {
+            List<String> ids = lookup("t:" + gram);
+            if (result == null) {
+                result = ids;
+            } else {
+                result.retainAll(new LinkedHashSet<>(ids));
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result == null ? new ArrayList<>() : result;
+    }
+
+    /** Adds to BUCKETS the postings of commit ID with MESSAGE. */
+    private static void post(HashMap<String, StringBuilder> buckets,
+                             String id, String message) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        keys.add(messageKey(message));
+        for (String w : message.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                keys.add("w:" + w);
+            }
+        }
+        for (String gram : grams(message)) {
+            keys.add("t:" + gram);
+        }
+        for (String key : keys) {
+            String hash = Utils.sha1(key);
+            buckets.computeIfAbsent(hash.substring(0, BUCKET_DIGITS),
+                                    k -> new StringBuilder())
+                .append(hash).append(' ').append(id).append('\n');
+        }
+    }
+
+    /** Appends the postings in BUCKETS, keyed by bucket name, to the
+     *  logs of the buckets, merging those that would grow too long into
+     *  their sorted parts. */
+    private static void append(HashMap<String, StringBuilder> buckets) {
+        for (Map.Entry<String, StringBuilder> e : buckets.entrySet()) {
+            File f = new File(INDEX_DIR + e.getKey());
+            byte[] added =
+                e.getValue().toString().getBytes(StandardCharsets.UTF_8);
+            try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+                long whole = out.length() - out.length() % LINE_LENGTH;
+                if ((whole + added.length) / LINE_LENGTH > MAX_UNSORTED) {
+                    byte[] log = new byte[(int) whole];
+                    out.readFully(log);
+                    merge(e.getKey(), new String(log, StandardCharsets.UTF_8)
+                          + e.getValue());
+                    whole = 0;
+                } else {
+                    out.seek(whole);
+                    out.write(added);
+                    whole += added.length;
+                }
+                out.setLength(whole);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Transaction.created(f);
+        }
+    }
+
+    /** Merges the postings in LOG, which are newer than any in the sorted
+     *  part of bucket NAME, into that part, and syncs it, so that the log
+     *  may be emptied. */
+    private static void merge(String name, String log) {
+        File f = new File(INDEX_DIR + name + SORTED_SUFFIX);
+        List<String> old = f.isFile()
+            ? lines(Utils.readContentsAsString(f)) : new ArrayList<>();
+        List<String> added = lines(log);
+        added.sort(MessageIndex::compareHashes);
+        StringBuilder merged = new StringBuilder();
+        int i = 0;
+        int j = 0;
+        while (i < old.size() || j < added.size()) {
+            if (j == added.size() || (i < old.size()
+                    && compareHashes(old.get(i), added.get(j)) <= 0)) {
+                merged.append(old.get(i));
+                i += 1;
+            } else {
+                merged.append(added.get(j));
+                j += 1;
+            }
+        }
+        Utils.writeAtomically(f, merged.toString());
+        Transaction.created(f);
+        Transaction.barrier();
+    }
+
+    /** Writes LINES, posting lines in order of age, as the sorted part of
+     *  bucket NAME. */
+    private static void writeSorted(String name, List<String> lines) {
+        lines.sort(MessageIndex::compareHashes);
+        File f = new File(INDEX_DIR + name + SORTED_SUFFIX);
+        Utils.writeAtomically(f, String.join("", lines));
+        Transaction.created(f);
+    }
+
+    /** Compares the key hashes of the posting lines X and Y. */
+    private static int compareHashes(String x, String y) {
+        for (int i = 0; i < Utils.UID_LENGTH; i += 1) {
+            if (x.charAt(i) != y.charAt(i)) {
+                return x.charAt(i) - y.charAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the whole posting lines of TEXT, each with its newline,
+     *  skipping any that are torn. */
+    private static List<String> lines(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i + LINE_LENGTH <= text.length();
+             i += LINE_LENGTH) {
+            if (text.charAt(i + LINE_LENGTH - 1) == '\n') {
+                result.add(text.substring(i, i + LINE_LENGTH));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the IDs posted under KEY, oldest first, without
+     *  duplicates. The log is read before the sorted part, since a writer
+     *  empties the log only after merging it into the sorted part. */
+    private static List<String> lookup(String key) {
+        String hash = Utils.sha1(key);
+        String name = INDEX_DIR + hash.substring(0, BUCKET_DIGITS);
+        ArrayList<String> logged = new ArrayList<>();
+        File log = new File(name);
+        if (log.isFile()) {
+            for (String line : lines(Utils.readContentsAsString(log))) {
+                if (line.startsWith(hash)) {
+                    logged.add(id(line));
+                }
+            }
+        }
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        File sorted = new File(name + SORTED_SUFFIX);
+        if (sorted.isFile()) {
+            search(sorted, hash, result);
+        }
+        result.addAll(logged);
+        return new ArrayList<>(result);
+    }
+
+    /** Adds to RESULT the IDs posted under the key with hash HASH in the
+     *  sorted part F of a bucket, found by binary search. */
+    private static void search(File f, String hash,
+                               LinkedHashSet<String> result) {
+        try (RandomAccessFile in = new RandomAccessFile(f, "r")) {
+            byte[] line = new byte[LINE_LENGTH];
+            long lo = 0;
+            long hi = in.length() / LINE_LENGTH;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                in.seek(mid * LINE_LENGTH);
+                in.readFully(line);
+                if (new String(line, 0, Utils.UID_LENGTH,
+                               StandardCharsets.UTF_8).compareTo(hash) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            in.seek(lo * LINE_LENGTH);
+            InputStream lines = new BufferedInputStream(
+                Channels.newInputStream(in.getChannel()));
+            while (lines.readNBytes(line, 0, LINE_LENGTH) == LINE_LENGTH) {
+                String text = new String(line, StandardCharsets.UTF_8);
+                if (!text.startsWith(hash)) {
+                    break;
+                }
+                result.add(id(text));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the commit ID of the posting LINE. */
+    private static String id(String line) {
+        return line.substring(Utils.UID_LENGTH + 1, LINE_LENGTH - 1);
+    }
+
+    /** Returns the key under which a whole MESSAGE is indexed. */
+    private static String messageKey(String message) {
+        return "m:" + message;
+    }
+
+    /** Returns the distinct lower-case trigrams of TEXT. */
+    private static LinkedHashSet<String> grams(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= lower.length(); i += 1) {
+            result.add(lower.substring(i, i + GRAM));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the MessageIndex.
+ *  @author Ethan Brown
+ */
+public class MessageIndexTest {
+
+    /** Removes the repository of the last test. */
+    @After
+    public void cleanUp() {
+        TestRepo.delete();
+    }
+
+    /** Commits are found by their whole message, by a word of it and by
+     *  a substring of it, ignoring case but for whole messages, oldest
+     *  first. */
+    @Test
+    public void lookupTest() {
+        TestRepo.init();
+        assertTrue(MessageIndex.exists());
+        MessageIndex.add(ID_1, "Fix the parser");
+        MessageIndex.add(ID_2, "fix tests");
+        MessageIndex.add(ID_3, "Add parser");
+        assertEquals(List.of(ID_1), MessageIndex.exact("Fix the parser"));
+        assertEquals(List.of(), MessageIndex.exact("fix the parser"));
+        assertEquals(List.of(ID_1, ID_2), MessageIndex.word("FIX"));
+        assertEquals(List.of(), MessageIndex.word("pars"));
+        assertEquals(List.of(ID_1, ID_3), MessageIndex.candidates("PARS"));
+        assertEquals(List.of(ID_1), MessageIndex.candidates("the par"));
+        assertEquals(List.of(), MessageIndex.candidates("xyz"));
+    }
+
+    /** Postings stay complete and in order when a bucket's log fills
+     *  and is merged into its sorted part, more than once, so that new
+     *  postings of a key follow its old ones. */
+    @Test
+    public void mergeTest() {
+        TestRepo.init();
+        ArrayList<String> ids = new ArrayList<>();
+        int adds = MERGES * MessageIndex.MAX_UNSORTED + EXTRA;
+        for (int i = 0; i < adds; i += 1) {
+            ids.add(Utils.sha1("commit " + i));
+            MessageIndex.add(ids.get(i), MESSAGE);
+        }
+        String bucket = MessageIndex.INDEX_DIR
+            + Utils.sha1("m:" + MESSAGE).substring(0,
+                                                   MessageIndex.BUCKET_DIGITS);
+        assertTrue(new File(bucket + MessageIndex.SORTED_SUFFIX).isFile());
+        assertTrue(new File(bucket).length() < new File(
+            bucket + MessageIndex.SORTED_SUFFIX).length());
+        assertEquals(ids, MessageIndex.exact(MESSAGE));
+        assertEquals(ids, MessageIndex.word("repeated"));
+    }
+
+    /** A partial posting left at the end of a log by a crash is skipped,
+     *  and cut off by the next addition. */
+    @Test
+    public void tornLogTest() {
+        TestRepo.init();
+        MessageIndex.add(ID_1, MESSAGE);
+        File log = new File(MessageIndex.INDEX_DIR
+                            + Utils.sha1("m:" + MESSAGE).substring(
+                                0, MessageIndex.BUCKET_DIGITS));
+        try (RandomAccessFile out = new RandomAccessFile(log, "rw")) {
+            out.seek(out.length());
+            out.writeBytes(Utils.sha1("torn"));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        assertEquals(List.of(ID_1), MessageIndex.exact(MESSAGE));
+        MessageIndex.add(ID_2, MESSAGE);
+        assertEquals(List.of(ID_1, ID_2), MessageIndex.exact(MESSAGE));
+    }
+
+    /** An index rebuilt from the commits of a repository finds them as
+     *  the index kept up by commit did, and holds only sorted parts. */
+    @Test
+    public void rebuildTest() {
+        TestRepo.init();
+        TestRepo.run("add", TestRepo.write("a", "a"));
+        TestRepo.run("commit", "Fix the parser");
+        TestRepo.run("add", TestRepo.write("a", "b"));
+        TestRepo.run("commit", MESSAGE);
+        List<String> exact = MessageIndex.exact(MESSAGE);
+        List<String> word = MessageIndex.word("the");
+        List<String> initial = MessageIndex.exact("initial commit");
+        assertEquals(1, exact.size());
+        assertEquals(1, initial.size());
+        MessageIndex.rebuild();
+        assertEquals(exact, MessageIndex.exact(MESSAGE));
+        assertEquals(word, MessageIndex.word("the"));
+        assertEquals(initial, MessageIndex.exact("initial commit"));
+        for (String name : Utils.plainFilenamesIn(MessageIndex.INDEX_DIR)) {
+            assertTrue(name, name.endsWith(MessageIndex.SORTED_SUFFIX));
+        }
+        assertEquals(exact.get(0) + "\n", TestRepo.run("find", MESSAGE)
+                     .replace("\r\n", "\n"));
+    }
+
+    /** A commit message. */
+    private static final String MESSAGE = "A repeated message";
+    /** Number of times mergeTest fills a log. */
+    private static final int MERGES = 2;
+    /** Number of further postings added by mergeTest. */
+    private static final int EXTRA = 10;
+    /** A commit ID. */
+    private static final String ID_1 = Utils.sha1("1");
+    /** Another commit ID. */
+    private static final String ID_2 = Utils.sha1("2");
+    /** A third commit ID. */
+    private static final String ID_3 = Utils.sha1("3");
+}
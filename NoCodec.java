@@ -0,0 +1,29 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** The codec that stores objects uncompressed.
+ *  @author Ethan Brown
+ */
+class NoCodec implements Codec {
+
+    @Override
+    public int id() {
+        return NONE;
+    }
+
+    @Override
+    public String name() {
+        return "none";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        return data;
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) {
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+}
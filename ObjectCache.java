@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A least-recently-used cache of objects of type V, keyed by ID and
+ *  bounded by the total size in bytes of the objects it holds. Counts
+ *  hits and misses so that its effectiveness can be reported.
+ *  @author Ethan Brown
+ */
+class ObjectCache<V> {
+
+    /** Initial capacity of the underlying map. */
+    private static final int INITIAL_CAPACITY = 64;
+    /** Load factor of the underlying map. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** A cache called NAME holding at most BUDGET bytes of objects. */
+    ObjectCache(String name, long budget) {
+        this.name = name;
+        this.budget = budget;
+    }
+
+    /** Returns the cached object with ID, or null, counting a hit or a
+     *  miss. */
+    synchronized V get(String id) {
+        Entry<V> e = entries.get(id);
+        if (e == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return e.value;
+    }
+
+    /** Caches VALUE, which takes SIZE bytes, as object ID, evicting the
+     *  least recently used objects to stay within budget. Objects larger
+     *  than the whole budget are not cached. */
+    synchronized void put(String id, V value, long size) {
+        if (size > budget) {
+            return;
+        }
+        Entry<V> old = entries.put(id, new Entry<>(value, size));
+        bytes += size - (old == null ? 0 : old.size);
+        Iterator<Map.Entry<String, Entry<V>>> it =
+            entries.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            bytes -= it.next().getValue().size;
+            it.remove();
+        }
+    }
+
+    /** Removes every cached object. */
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /** Returns the number of successful lookups. */
+    long hits() {
+        return hits;
+    }
+
+    /** Returns the number of failed lookups. */
+    long misses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cache: %d hits, %d misses, %d objects,"
+                             + " %d/%d bytes", name, hits, misses,
+                             entries.size(), bytes, budget);
+    }
+
+    /** A cached object and its size. */
+    private static class Entry<V> {
+        /** An entry for VALUE, which takes SIZE bytes. */
+        Entry(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+        /** The cached object. */
+        private final V value;
+        /** Its size in bytes. */
+        private final long size;
+    }
+
+    /** Name used when reporting statistics. */
+    private final String name;
+    /** Most bytes of objects held at once. */
+    private final long budget;
+    /** Cached objects, least recently used first. */
+    private final LinkedHashMap<String, Entry<V>> entries =
+        new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    /** Total size of the cached objects. */
+    private long bytes;
+    /** Number of successful lookups. */
+    private long hits;
+    /** Number of failed lookups. */
+    private long misses;
+}
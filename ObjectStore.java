@@ -0,0 +1,675 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/** Storage for the objects (commits and blobs) of a repository. An
+ *  object is either a loose file or an entry in the pack file, located
+ *  through the pack index in a single seek. Loose objects are spread over
+ *  up to 256 subdirectories of OBJ_DIR named by the first SHARD_DIGITS
+ *  of their ID, each file named by the rest, so that no directory grows
+ *  past a few thousand entries. Repositories from before that layout keep
+ *  their objects directly in OBJ_DIR until migrated; those files are
+ *  still found, at the cost of one more lookup for absent objects.
+ *  Either way an object's bytes are compressed as described in Codec.
+ *  Commits, trees and deltas are stored in their own encodings; whole
+ *  blobs are stored as their raw contents, of type RAW.
+ *  Blobs of RAW_THRESHOLD bytes or more are never compressed, so that
+ *  checkout can copy them from the object store to the working directory
+ *  without passing them through memory.
+ *  Files of chunkThreshold() bytes or more are split by a Chunker, each
+ *  chunk stored as a blob of its own, and the file is stored as a
+ *  MANIFEST listing its chunks, so that versions of a large file, and
+ *  large files sharing content, share their unchanged chunks.
+ *  All reads and writes of objects go through this class, so callers
+ *  never need to know where an object lives.
+ *  @author Ethan Brown
+ */
+class ObjectStore {
+
+    /** String representing pack directory within .gitlet directory. */
+    static final String PACK_DIR = ".gitlet/pack/";
+    /** Location of the append-only pack file. Each entry is an int
+     *  length followed by that many bytes of object data. */
+    static final String PACK_FILE = PACK_DIR + "objects.pack";
+    /** Location of the index mapping IDs to offsets in PACK_FILE. */
+    static final String PACK_INDEX = PACK_DIR + "objects.idx";
+    /** Largest object, in bytes, that pack moves into PACK_FILE, whose
+     *  length prefixes are ints. Larger objects stay loose, where they
+     *  are found first anyway. */
+    static final long MAX_PACKED_SIZE = Integer.MAX_VALUE;
+    /** Type of objects whose header does not record one. */
+    static final int UNKNOWN = 0;
+    /** Type of whole blobs. */
+    static final int BLOB = 1;
+    /** Type of blobs stored as a Delta. */
+    static final int DELTA = 2;
+    /** Type of commits. */
+    static final int COMMIT = 3;
+    /** Type of whole blobs stored as their raw contents rather than as
+     *  serialized Blobs. */
+    static final int RAW = 4;
+    /** Size from which blobs are stored uncompressed. Large files are
+     *  mostly compressed formats already, and stored uncompressed they
+     *  can be checked out with FileChannel.transferTo. */
+    static final int RAW_THRESHOLD = 1 << 20;
+    /** Type of blobs stored as a manifest of chunks: for each chunk in
+     *  order, its ID as ID_BYTES bytes and its length as an int. */
+    static final int MANIFEST = 5;
+    /** Type of trees, the directories of commits. */
+    static final int TREE = 6;
+    /** Name of the system property giving the size in bytes from which
+     *  files are stored in chunks. */
+    static final String CHUNK_PROPERTY = "gitlet.chunkThreshold";
+    /** Size from which files are stored in chunks by default. */
+    static final long CHUNK_THRESHOLD = 8 << 20;
+    /** Byte length of an ID within a manifest. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Most bytes of serialized commits kept in the commit cache. */
+    static final long COMMIT_CACHE_BYTES = 8 << 20;
+    /** Most bytes of blob contents kept in the blob cache. */
+    static final long BLOB_CACHE_BYTES = 32 << 20;
+    /** Number of leading hexadecimal digits of an ID naming its shard. */
+    static final int SHARD_DIGITS = 2;
+
+    /** Returns the size in bytes from which files are stored in
+     *  chunks. */
+    static long chunkThreshold() {
+        return Long.getLong(CHUNK_PROPERTY, CHUNK_THRESHOLD);
+    }
+
+    /** Returns the path of object ID relative to OBJ_DIR in the sharded
+     *  layout. */
+    static String shardPath(String id) {
+        return id.substring(0, SHARD_DIGITS) + File.separator
+            + id.substring(SHARD_DIGITS);
+    }
+
+    /** Returns the loose file that does or would hold object ID. */
+    static File looseFile(String id) {
+        File f = new File(Repository.OBJ_DIR + shardPath(id));
+        if (!f.exists()) {
+            File flat = new File(Repository.OBJ_DIR + id);
+            if (flat.exists()) {
+                return flat;
+            }
+        }
+        return f;
+    }
+
+    /** Returns true iff object ID is stored, loose or packed. */
+    static boolean contains(String id) {
+        if (looseFile(id).exists()) {
+            return true;
+        }
+        IdTable index = packIndex();
+        return index != null && index.find(id) != -1;
+    }
+
+    /** Returns the type of object ID, reading only its header. Returns
+     *  UNKNOWN for objects written before types were recorded. */
+    static int typeOf(String id) {
+        byte[] header = new byte[Codec.HEADER_SIZE];
+        int n;
+        File loose = looseFile(id);
+        try {
+            if (loose.exists()) {
+                try (InputStream in = Files.newInputStream(loose.toPath())) {
+                    n = in.readNBytes(header, 0, header.length);
+                    return Codec.type(header, n);
+                } catch (NoSuchFileException packed) {
+                    // Packed by another process since it was listed.
+                }
+            }
+            try (RandomAccessFile pack =
+                     new RandomAccessFile(PACK_FILE, "r")) {
+                pack.seek(packOffset(id));
+                n = Math.min(pack.readInt(), header.length);
+                pack.readFully(header, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Codec.type(header, n);
+    }
+
+    /** Returns the serialized bytes of object ID, or throws
+     *  IllegalArgumentException if there is no such object. */
+    static byte[] readBytes(String id) {
+        return Codec.decode(readStored(id));
+    }
+
+    /** Returns the bytes of object ID as stored, header included, or
+     *  throws IllegalArgumentException if there is no such object. */
+    private static byte[] readStored(String id) {
+        File loose = looseFile(id);
+        try {
+            if (loose.exists()) {
+                try {
+                    return Files.readAllBytes(loose.toPath());
+                } catch (NoSuchFileException packed) {
+                    // Packed by another process since it was listed.
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (RandomAccessFile pack = new RandomAccessFile(PACK_FILE, "r")) {
+            pack.seek(packOffset(id));
+            byte[] result = new byte[pack.readInt()];
+            pack.readFully(result);
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns object ID as an object of type T, casting it to
+     *  EXPECTEDCLASS. Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T read(String id,
+                                           Class<T> expectedClass) {
+        return Utils.deserialize(readBytes(id), expectedClass);
+    }
+
+    /** Returns the commit with ID, from the commit cache if possible.
+     *  Throws IllegalArgumentException if there is no such commit. */
+    static Commit readCommit(String id) {
+        Commit c = commitCache.get(id);
+        if (c == null) {
+            byte[] bytes = readBytes(id);
+            c = Commit.decode(bytes);
+            c.setID(id);
+            commitCache.put(id, c, bytes.length);
+        }
+        return c;
+    }
+
+    /** Returns the blob with ID, rebuilding it from its chain of deltas
+     *  if it is not stored whole. Blobs are kept in the blob cache once
+     *  read, which also spares rebuilding the bases of later deltas. */
+    static Blob readBlob(String id) {
+        Blob cached = blobCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        ArrayList<Delta> chain = new ArrayList<>();
+        String name = null;
+        byte[] contents = null;
+        String next = id;
+        while (contents == null) {
+            byte[] stored = readStored(next);
+            int type = Codec.type(stored, stored.length);
+            if (type == RAW || type == MANIFEST) {
+                contents = type == RAW ? Codec.decode(stored)
+                    : concatenate(chunks(Codec.decode(stored)));
+                name = name == null ? "" : name;
+                break;
+            }
+            byte[] bytes = Codec.decode(stored);
+            Serializable obj = type == DELTA ? Delta.decode(bytes)
+                : Utils.deserialize(bytes, Serializable.class);
+            if (obj instanceof Blob) {
+                contents = ((Blob) obj).getContents();
+                name = name == null ? ((Blob) obj).getName() : name;
+            } else if (obj instanceof Delta) {
+                Delta d = (Delta) obj;
+                chain.add(d);
+                name = name == null ? d.getName() : name;
+                next = d.getBase();
+                Blob base = blobCache.get(next);
+                contents = base == null ? null : base.getContents();
+            } else {
+                throw new IllegalArgumentException(id + " is not a blob");
+            }
+        }
+        for (int i = chain.size() - 1; i >= 0; i -= 1) {
+            contents = Delta.apply(contents, chain.get(i).getInstructions());
+        }
+        Blob result = new Blob(name, contents);
+        blobCache.put(id, result, contents.length);
+        return result;
+    }
+
+    /** Returns the IDs of the chunks listed in MANIFEST, in order. */
+    private static List<String> chunks(byte[] manifest) {
+        ByteBuffer in = ByteBuffer.wrap(manifest);
+        ArrayList<String> result = new ArrayList<>();
+        byte[] id = new byte[ID_BYTES];
+        while (in.hasRemaining()) {
+            in.get(id).getInt();
+            result.add(Utils.toHex(id));
+        }
+        return result;
+    }
+
+    /** Returns the contents of the blobs with IDS, one after another. */
+    private static byte[] concatenate(List<String> ids) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String id : ids) {
+            byte[] contents = readBlob(id).getContents();
+            out.write(contents, 0, contents.length);
+        }
+        return out.toByteArray();
+    }
+
+    /** Stores the file F in chunks, reading it chunk by chunk, and returns
+     *  its blob ID, which is the same as if it were stored whole. Chunks
+     *  already in the store are not written again. Safe to call from
+     *  several threads. */
+    static String writeChunked(File f) {
+        long size = f.length();
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(manifest);
+        try (InputStream in = Files.newInputStream(f.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(Blob.header(size));
+            Chunker chunker = new Chunker(in);
+            long total = 0;
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                md.update(chunk);
+                total += chunk.length;
+                Blob b = new Blob("", chunk);
+                String id = b.getID();
+                if (!contains(id)) {
+                    writeEncoded(id, encodeBlob(id, b, null));
+                }
+                entries.write(Utils.fromHex(id));
+                entries.writeInt(chunk.length);
+            }
+            if (total != size) {
+                throw new IllegalArgumentException(f + " changed while "
+                                                   + "being stored");
+            }
+            String id = Utils.toHex(md.digest());
+            if (!contains(id)) {
+                writeEncoded(id, Codec.encode(Codec.current(), MANIFEST,
+                                              manifest.toByteArray()));
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                                               + "SHA-1");
+        }
+    }
+
+    /** Stores blob B as object ID. If the blob with ID BASE, usually the
+     *  previous version of the same file, is near enough to B and not too
+     *  deep in its own delta chain, B is stored as a delta against it.
+     *  BASE may be null. */
+    static void writeBlob(String id, Blob b, String base) {
+        writeEncoded(id, encodeBlob(id, b, base));
+    }
+
+    /** Returns the stored form of blob B, whose ID is ID, as writeBlob
+     *  would store it given BASE. Safe to call from several threads. */
+    static byte[] encodeBlob(String id, Blob b, String base) {
+        if (base != null && !base.equals(id) && contains(base)) {
+            int type = typeOf(base);
+            int depth = 0;
+            if (type == DELTA) {
+                depth = Delta.decode(readBytes(base)).getDepth();
+            }
+            if (depth < Delta.MAX_DEPTH && type != MANIFEST) {
+                byte[] source = readBlob(base).getContents();
+                byte[] delta = Delta.create(source, b.getContents());
+                if (delta.length < b.getContents().length / 2) {
+                    blobCache.put(id, b, b.getContents().length);
+                    return encode(new Delta(b.getName(), base, depth + 1,
+                                            delta));
+                }
+            }
+        }
+        byte[] contents = b.getContents();
+        Codec codec = contents.length >= RAW_THRESHOLD
+            ? Codec.ALL[Codec.NONE] : Codec.current();
+        return Codec.encode(codec, RAW, contents);
+    }
+
+    /** Writes the contents of blob ID to TARGET. A blob stored whole and
+     *  uncompressed is copied with FileChannel.transferTo straight from
+     *  its loose file or its region of the pack, and one compressed with
+     *  deflate is inflated as a stream, so that neither is ever held in
+     *  memory whole. A blob stored in chunks is copied chunk by chunk.
+     *  Other blobs are rebuilt as by readBlob. */
+    static void copyBlob(String id, File target) {
+        try (FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            append(id, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of blob ID to OUT at its position, as for
+     *  copyBlob, and advances the position past them. */
+    private static void append(String id, FileChannel out)
+        throws IOException {
+        Blob cached = blobCache.get(id);
+        if (cached != null) {
+            writeFully(out, cached.getContents());
+            return;
+        }
+        File source = looseFile(id);
+        long start = 0;
+        FileChannel loose = null;
+        if (source.exists()) {
+            try {
+                loose = FileChannel.open(source.toPath(),
+                                         StandardOpenOption.READ);
+            } catch (NoSuchFileException packed) {
+                // Packed by another process since it was listed.
+            }
+        }
+        if (loose == null) {
+            start = packOffset(id) + Integer.BYTES;
+        }
+        try (FileChannel in = loose != null ? loose
+                 : FileChannel.open(new File(PACK_FILE).toPath(),
+                                    StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Codec.HEADER_SIZE);
+            while (header.hasRemaining()
+                   && in.read(header, start + header.position()) > 0) {
+                continue;
+            }
+            byte[] h = header.array();
+            int type = Codec.type(h, header.position());
+            int codec = h[Codec.CODEC_OFFSET];
+            if (type == MANIFEST) {
+                for (String chunk : chunks(readBytes(id))) {
+                    append(chunk, out);
+                }
+                return;
+            }
+            if (type != RAW
+                    || (codec != Codec.NONE && codec != DeflateCodec.ID)) {
+                writeFully(out, readBlob(id).getContents());
+                return;
+            }
+            long length = header.getInt(Codec.HEADER_SIZE - Integer.BYTES);
+            long body = start + Codec.HEADER_SIZE;
+            if (codec == Codec.NONE) {
+                long n = 0;
+                while (n < length) {
+                    n += in.transferTo(body + n, length - n, out);
+                }
+            } else {
+                in.position(body);
+                ReadableByteChannel inflated = Channels.newChannel(
+                    new InflaterInputStream(Channels.newInputStream(in)));
+                long n = 0;
+                while (n < length) {
+                    long copied = out.transferFrom(inflated,
+                                                   out.position() + n,
+                                                   length - n);
+                    if (copied == 0) {
+                        throw new IllegalArgumentException("object " + id
+                                                           + " is truncated");
+                    }
+                    n += copied;
+                }
+                out.position(out.position() + length);
+            }
+        }
+    }
+
+    /** Writes all of DATA to OUT at its position. */
+    private static void writeFully(FileChannel out, byte[] data)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /** Stores OBJ as a loose object named ID. */
+    static void write(String id, Serializable obj) {
+        writeEncoded(id, encode(obj));
+    }
+
+    /** Stores DATA, an object as returned by encode, as the loose object
+     *  named ID. The object appears under its name only once written in
+     *  full, and is synced when the command's Transaction commits. */
+    static void writeEncoded(String id, byte[] data) {
+        File f = new File(Repository.OBJ_DIR + shardPath(id));
+        f.getParentFile().mkdir();
+        Utils.writeAtomically(f, data);
+        Transaction.created(f);
+    }
+
+    /** Writes OBJ to FILE, compressed with the current codec, behind a
+     *  header recording its type. */
+    static void writeFile(File file, Serializable obj) {
+        Utils.writeContents(file, encode(obj));
+    }
+
+    /** Returns OBJ serialized, or encoded if it is a Commit or Delta, and
+     *  compressed with the current codec, behind a header recording its
+     *  type. */
+    static byte[] encode(Serializable obj) {
+        int type = UNKNOWN;
+        if (obj instanceof Commit) {
+            type = COMMIT;
+        } else if (obj instanceof Blob) {
+            type = BLOB;
+        } else if (obj instanceof Delta) {
+            type = DELTA;
+        }
+        byte[] contents = type == COMMIT ? ((Commit) obj).encode()
+            : type == DELTA ? ((Delta) obj).encode() : Utils.serialize(obj);
+        return Codec.encode(Codec.current(), type, contents);
+    }
+
+    /** Returns the object of type T written to FILE by writeFile, casting
+     *  it to EXPECTEDCLASS. Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T readFile(File file,
+                                               Class<T> expectedClass) {
+        return Utils.deserialize(Codec.decode(Utils.readContents(file)),
+                                 expectedClass);
+    }
+
+    /** Returns a report of the hits and misses of the object caches. */
+    static String cacheStats() {
+        return commitCache + System.lineSeparator() + blobCache;
+    }
+
+    /** Returns the IDs of all stored objects, in no particular order. */
+    static List<String> ids() {
+        List<String> result = looseIds();
+        IdTable index = packIndex();
+        if (index != null) {
+            for (int i = 0; i < index.size(); i += 1) {
+                result.add(index.idAt(i));
+            }
+        }
+        return result;
+    }
+
+    /** Moves every loose object of at most MAX_PACKED_SIZE bytes into
+     *  the pack file, then rewrites the pack index to cover both old and
+     *  new entries. Loose files are only removed once the new index is in
+     *  place. */
+    static void pack() {
+        new File(PACK_DIR).mkdir();
+        IdTable old = packIndex();
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<Long> offsets = new ArrayList<>();
+        if (old != null) {
+            for (int i = 0; i < old.size(); i += 1) {
+                ids.add(old.idAt(i));
+                offsets.add(old.valueAt(i));
+            }
+        }
+        List<String> loose = looseIds();
+        loose.removeIf(id -> looseFile(id).length() > MAX_PACKED_SIZE);
+        if (loose.isEmpty()) {
+            return;
+        }
+        try (RandomAccessFile pack = new RandomAccessFile(PACK_FILE, "rw")) {
+            long end = pack.length();
+            for (String id : loose) {
+                if (old != null && old.find(id) != -1) {
+                    continue;
+                }
+                File f = looseFile(id);
+                pack.seek(end);
+                pack.writeInt((int) f.length());
+                try (FileChannel in = FileChannel.open(f.toPath(),
+                        StandardOpenOption.READ)) {
+                    long n = 0;
+                    while (n < f.length()) {
+                        n += pack.getChannel().transferFrom(
+                            in, end + Integer.BYTES + n, f.length() - n);
+                    }
+                }
+                ids.add(id);
+                offsets.add(end);
+                end += Integer.BYTES + f.length();
+            }
+            pack.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += 1) {
+            order.add(i);
+        }
+        order.sort((a, b) -> ids.get(a).compareTo(ids.get(b)));
+        ArrayList<String> sorted = new ArrayList<>();
+        long[] values = new long[ids.size()];
+        for (int i = 0; i < order.size(); i += 1) {
+            sorted.add(ids.get(order.get(i)));
+            values[i] = offsets.get(order.get(i));
+        }
+        IdTable.write(new File(PACK_INDEX), sorted, values);
+        packIndex = null;
+        Transaction.barrier();
+        for (String id : loose) {
+            looseFile(id).delete();
+        }
+    }
+
+    /** Moves the loose objects of a repository from before sharding into
+     *  their shards. Each object is moved with a single rename, so an
+     *  interrupted migration leaves every object readable and may simply
+     *  be run again. */
+    static void migrate() {
+        String[] names = new File(Repository.OBJ_DIR).list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File flat = new File(Repository.OBJ_DIR + name);
+            if (name.length() != Utils.UID_LENGTH || !flat.isFile()) {
+                continue;
+            }
+            File f = new File(Repository.OBJ_DIR + shardPath(name));
+            f.getParentFile().mkdir();
+            try {
+                Files.move(flat.toPath(), f.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the IDs of all loose objects, sharded or not, in no
+     *  particular order. */
+    private static List<String> looseIds() {
+        ArrayList<String> result = new ArrayList<>();
+        File dir = new File(Repository.OBJ_DIR);
+        String[] names = dir.list();
+        if (names == null) {
+            return result;
+        }
+        for (String name : names) {
+            if (name.length() == Utils.UID_LENGTH) {
+                result.add(name);
+            } else if (name.length() == SHARD_DIGITS) {
+                String[] shard = new File(dir, name).list();
+                if (shard != null) {
+                    for (String rest : shard) {
+                        if (name.length() + rest.length()
+                                == Utils.UID_LENGTH) {
+                            result.add(name + rest);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the offset in PACK_FILE of object ID, which is not loose.
+     *  Another process may have packed it since the pack index was
+     *  opened, so the index is reopened once before giving up. Throws
+     *  IllegalArgumentException if there is no such object. */
+    private static long packOffset(String id) {
+        IdTable index = packIndex();
+        int i = index == null ? -1 : index.find(id);
+        if (i == -1) {
+            packIndex = null;
+            index = packIndex();
+            i = index == null ? -1 : index.find(id);
+        }
+        if (i == -1) {
+            throw new IllegalArgumentException("no object " + id);
+        }
+        return index.valueAt(i);
+    }
+
+    /** Returns the pack index, or null if nothing has been packed. */
+    private static IdTable packIndex() {
+        if (packIndex == null) {
+            packIndex = IdTable.open(new File(PACK_INDEX));
+        }
+        return packIndex;
+    }
+
+    /** Forgets what was read from files that another process may have
+     *  replaced since, so that a long-lived process sees the store as it
+     *  is now. Cached objects are kept, since objects never change. */
+    static void refresh() {
+        packIndex = null;
+    }
+
+    /** Empties the object caches, so that later reads rebuild objects
+     *  from the store as a new process would. */
+    static void clearCaches() {
+        commitCache.clear();
+        blobCache.clear();
+    }
+
+    /** The pack index, once opened. */
+    private static IdTable packIndex;
+    /** Recently read commits. */
+    private static ObjectCache<Commit> commitCache =
+        new ObjectCache<>("commit", COMMIT_CACHE_BYTES);
+    /** Recently read or rebuilt blobs. */
+    private static ObjectCache<Blob> blobCache =
+        new ObjectCache<>("blob", BLOB_CACHE_BYTES);
+}
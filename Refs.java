@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/** The branches of a repository. Each branch is a file in BRANCHES
+ *  holding nothing but the 40-character ID of its head commit. Branches
+ *  may also be moved into PACKED_REFS, a single file with one
+ *  "ID NAME" line per branch, which spares a directory entry for each of
+ *  thousands of branches. A loose file overrides a packed entry of the
+ *  same name, so updating a branch only ever writes its loose file.
+ *  @author Ethan Brown
+ */
+class Refs {
+
+    /** Location of the packed refs file within the .gitlet directory. */
+    static final String PACKED_REFS = ".gitlet/packed-refs";
+
+    /** Returns the ID of the head commit of BRANCH, or null if there is
+     *  no such branch. */
+    static String read(String branch) {
+        if (frozen != null) {
+            return frozen.get(branch);
+        }
+        File f = new File(Repository.BRANCHES + branch);
+        if (Transaction.exists(f)) {
+            return readLoose(f);
+        }
+        return readPacked().get(branch);
+    }
+
+    /** Returns true iff BRANCH exists. */
+    static boolean exists(String branch) {
+        return read(branch) != null;
+    }
+
+    /** Points BRANCH at the commit with ID. */
+    static void write(String branch, String id) {
+        Transaction.write(new File(Repository.BRANCHES + branch), id);
+    }
+
+    /** Deletes BRANCH, wherever it is stored. */
+    static void delete(String branch) {
+        File f = new File(Repository.BRANCHES + branch);
+        if (Transaction.exists(f)) {
+            Transaction.delete(f);
+        }
+        TreeMap<String, String> packed = readPacked();
+        if (packed.remove(branch) != null) {
+            writePacked(packed);
+        }
+    }
+
+    /** Returns the names of all branches, in lexicographic order. */
+    static List<String> names() {
+        if (frozen != null) {
+            return new ArrayList<>(frozen.keySet());
+        }
+        TreeMap<String, String> all = readPacked();
+        List<String> loose =
+            Transaction.plainFilenamesIn(Repository.BRANCHES);
+        if (loose != null) {
+            for (String name : loose) {
+                all.put(name, "");
+            }
+        }
+        return new ArrayList<>(all.keySet());
+    }
+
+    /** Reads every branch now, and answers read and names from what was
+     *  read until thaw is called. A branch deleted between being listed
+     *  and being read is left out. */
+    static void freeze() {
+        frozen = null;
+        TreeMap<String, String> all = new TreeMap<>();
+        for (String name : names()) {
+            String id = read(name);
+            if (id != null) {
+                all.put(name, id);
+            }
+        }
+        frozen = all;
+    }
+
+    /** Makes read and names read the branches' files again. */
+    static void thaw() {
+        frozen = null;
+    }
+
+    /** Moves every loose branch into PACKED_REFS. Like every change to
+     *  the branches, this takes effect when the command's Transaction
+     *  commits, and then as a whole. */
+    static void pack() {
+        TreeMap<String, String> packed = readPacked();
+        List<String> loose =
+            Transaction.plainFilenamesIn(Repository.BRANCHES);
+        if (loose == null || loose.isEmpty()) {
+            return;
+        }
+        for (String name : loose) {
+            packed.put(name, readLoose(new File(Repository.BRANCHES + name)));
+        }
+        writePacked(packed);
+        for (String name : loose) {
+            Transaction.delete(new File(Repository.BRANCHES + name));
+        }
+    }
+
+    /** Returns the ID stored in the loose branch file F. Branch files of
+     *  older repositories hold a whole serialized commit instead; those
+     *  are converted to an ID on first read. */
+    private static String readLoose(File f) {
+        byte[] contents = Transaction.read(f);
+        if (contents.length == Utils.UID_LENGTH) {
+            return new String(contents, StandardCharsets.UTF_8);
+        }
+        Commit c = Utils.deserialize(contents, Commit.class);
+        String id = Utils.sha1((Object) Utils.serialize(c));
+        Transaction.write(f, id);
+        return id;
+    }
+
+    /** Returns the contents of PACKED_REFS as a map from branch name to
+     *  ID. */
+    private static TreeMap<String, String> readPacked() {
+        TreeMap<String, String> result = new TreeMap<>();
+        byte[] contents = Transaction.read(new File(PACKED_REFS));
+        if (contents == null) {
+            return result;
+        }
+        String text = new String(contents, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.length() > Utils.UID_LENGTH) {
+                result.put(line.substring(Utils.UID_LENGTH + 1),
+                           line.substring(0, Utils.UID_LENGTH));
+            }
+        }
+        return result;
+    }
+
+    /** Replaces the contents of PACKED_REFS with the branches in PACKED,
+     *  a map from branch name to ID. */
+    private static void writePacked(TreeMap<String, String> packed) {
+        StringBuilder out = new StringBuilder();
+        for (String name : packed.keySet()) {
+            out.append(packed.get(name)).append(' ').append(name)
+                .append('\n');
+        }
+        Transaction.write(new File(PACKED_REFS), out.toString());
+    }
+
+    /** The branches as read by freeze, keyed by name, or null. */
+    private static TreeMap<String, String> frozen;
+}
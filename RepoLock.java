@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/** The lock serializing the commands that change a repository. It is an
+ *  operating-system lock on the file LOCK_FILE, taken through a
+ *  FileChannel, so it is released as soon as its holder exits, however
+ *  it exits. While it holds the lock, a process keeps "PID@HOST" in the
+ *  file, which names it in the message of a command that gives up
+ *  waiting after TIMEOUT_PROPERTY milliseconds. A lock can still outlive
+ *  its holder where the file system does not release locks of dead
+ *  processes, as over some network mounts. The file is never removed
+ *  automatically, since a waiter cannot tell a dead holder's name from
+ *  that of a new holder that has locked the file but not yet written
+ *  its own, and removing the file under a live holder would let a
+ *  second writer in; instead, the message of a command that gives up
+ *  says when the holder named is a process of this host that no longer
+ *  runs.
+ *
+ *  Commands that only read need not take the lock: objects never change
+ *  once written, and every other file is replaced by a rename, so a
+ *  reader sees each file either before or after a writer's commit.
+ *  @author Ethan Brown
+ */
+class RepoLock {
+
+    /** Location of the lock file within the .gitlet directory. */
+    static final String LOCK_FILE = ".gitlet/lock";
+    /** System property giving the most milliseconds a writer waits for
+     *  the lock. */
+    static final String TIMEOUT_PROPERTY = "gitlet.lockTimeout";
+    /** Default of TIMEOUT_PROPERTY. */
+    static final long DEFAULT_TIMEOUT = 10000;
+    /** Milliseconds between the first attempts to take the lock. */
+    private static final long FIRST_POLL = 1;
+    /** Most milliseconds between attempts to take the lock. */
+    private static final long MAX_POLL = 50;
+    /** File holding the ID of the current boot, on Linux. */
+    private static final String BOOT_ID = "/proc/sys/kernel/random/boot_id";
+
+    /** Takes the lock, waiting for it for at most the timeout, and throws
+     *  GitletException if it is still held by then. */
+    static void acquire() {
+        long deadline = System.currentTimeMillis()
+            + Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+        long poll = FIRST_POLL;
+        while (!tryLock()) {
+            if (System.currentTimeMillis() >= deadline) {
+                String holder = holder();
+                String message = "Repository is locked by "
+                    + (holder == null ? "another process"
+                       : "process " + holder);
+                if (isStale(holder)) {
+                    message += ", which is no longer running; if no other "
+                        + "process uses the repository, delete " + LOCK_FILE;
+                }
+                throw new GitletException(message + ".");
+            }
+            try {
+                Thread.sleep(poll);
+            } catch (InterruptedException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            poll = Math.min(2 * poll, MAX_POLL);
+        }
+    }
+
+    /** Takes the lock if no other process holds it, without waiting,
+     *  and returns true iff this process then holds it. */
+    static boolean tryAcquire() {
+        return held() || tryLock();
+    }
+
+    /** Releases the lock if it is held. */
+    static void release() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.truncate(0);
+            channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            channel = null;
+        }
+    }
+
+    /** Returns true iff this process holds the lock. */
+    static boolean held() {
+        return channel != null;
+    }
+
+    /** Makes one attempt to take the lock, and returns true iff it
+     *  succeeded. The lock only counts if the file locked is still the
+     *  one named LOCK_FILE, which a user clearing a stale lock may have
+     *  removed. */
+    private static boolean tryLock() {
+        Path path = new File(LOCK_FILE).toPath();
+        try {
+            FileChannel ch = FileChannel.open(path,
+                                              StandardOpenOption.CREATE,
+                                              StandardOpenOption.READ,
+                                              StandardOpenOption.WRITE);
+            try {
+                Object key = fileKey(path);
+                FileLock lock = ch.tryLock();
+                if (lock == null || key == null
+                        || !key.equals(fileKey(path))) {
+                    return false;
+                }
+                byte[] me = (ProcessHandle.current().pid() + "@" + host())
+                    .getBytes(StandardCharsets.UTF_8);
+                ch.truncate(0);
+                ch.write(ByteBuffer.wrap(me), 0);
+                channel = ch;
+                return true;
+            } finally {
+                if (channel != ch) {
+                    ch.close();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the "PID@HOST" of the holder of the lock, or null if it is
+     *  not recorded. */
+    private static String holder() {
+        try {
+            String text = new String(Files.readAllBytes(
+                new File(LOCK_FILE).toPath()), StandardCharsets.UTF_8);
+            return text.isEmpty() ? null : text;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns true iff HOLDER, as returned by holder, names a process of
+     *  this host that is no longer running. */
+    private static boolean isStale(String holder) {
+        if (holder == null) {
+            return false;
+        }
+        int at = holder.indexOf('@');
+        if (at == -1 || !holder.substring(at + 1).equals(host())) {
+            return false;
+        }
+        try {
+            long pid = Long.parseLong(holder.substring(0, at));
+            return ProcessHandle.of(pid).map(p -> !p.isAlive()).orElse(true);
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the identity of the file at PATH, or null if there is
+     *  none. */
+    private static Object fileKey(Path path) throws IOException {
+        try {
+            return Objects.requireNonNullElse(
+                Files.readAttributes(path, BasicFileAttributes.class)
+                .fileKey(), path);
+        } catch (NoSuchFileException excp) {
+            return null;
+        }
+    }
+
+    /** Returns a name for this host. Where the system offers one, it is
+     *  the ID of the current boot, which is cheaper to read than the host
+     *  name and also shows locks taken before a restart to be stale. */
+    private static String host() {
+        File boot = new File(BOOT_ID);
+        if (boot.isFile()) {
+            return Utils.readContentsAsString(boot).trim();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException excp) {
+            return "localhost";
+        }
+    }
+
+    /** The channel of the lock file while the lock is held, or null. */
+    private static FileChannel channel;
+}
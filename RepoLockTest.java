@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the RepoLock, against commands run in a second process, since
+ *  a lock excludes only other processes.
+ *  @author Ethan Brown
+ */
+public class RepoLockTest {
+
+    /** Removes the repository of the last test. */
+    @After
+    public void cleanUp() {
+        TestRepo.delete();
+    }
+
+    /** A command that writes gives up while another process holds the
+     *  lock, naming that process and changing nothing, and runs once the
+     *  lock is released. */
+    @Test
+    public void exclusionTest() {
+        TestRepo.init();
+        RepoLock.acquire();
+        assertTrue(RepoLock.held());
+        String out = runChild("branch", "other");
+        assertTrue(out, out.startsWith("Repository is locked by process "
+                                       + ProcessHandle.current().pid()
+                                       + "@"));
+        assertFalse(Refs.exists("other"));
+        RepoLock.release();
+        assertFalse(RepoLock.held());
+        assertEquals("", runChild("branch", "other"));
+        assertTrue(Refs.exists("other"));
+    }
+
+    /** Commands that only read run while another process holds the
+     *  lock. */
+    @Test
+    public void snapshotReadTest() {
+        TestRepo.init();
+        RepoLock.acquire();
+        String log = runChild("log");
+        assertTrue(log, log.contains("initial commit"));
+        String status = runChild("status");
+        assertTrue(status, status.startsWith("=== Branches ===\n*master\n"));
+    }
+
+    /** A process holding the lock may try to take it again, as status
+     *  does, and keeps it. */
+    @Test
+    public void tryAcquireTest() {
+        TestRepo.init();
+        assertTrue(RepoLock.tryAcquire());
+        assertTrue(RepoLock.tryAcquire());
+        assertTrue(RepoLock.held());
+        RepoLock.release();
+        assertFalse(RepoLock.held());
+    }
+
+    /** Runs gitlet with ARGS in a new process, in the current directory,
+     *  waiting at most TIMEOUT milliseconds for the lock, and returns what
+     *  it prints. */
+    private static String runChild(String... args) {
+        List<String> command = new ArrayList<>(List.of(
+            System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java",
+            "-cp", System.getProperty("java.class.path"),
+            "-D" + RepoLock.TIMEOUT_PROPERTY + "=" + TIMEOUT,
+            "gitlet.Main"));
+        command.addAll(List.of(args));
+        try {
+            Process child = new ProcessBuilder(command)
+                .redirectErrorStream(true).start();
+            String out = new String(child.getInputStream().readAllBytes(),
+                                    StandardCharsets.UTF_8);
+            child.waitFor();
+            return out.replace("\r\n", "\n");
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Milliseconds a child process waits for the lock. */
+    private static final long TIMEOUT = 200;
+}
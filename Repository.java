@@ -2,33 +2,75 @@ package gitlet;
 
 
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Date;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
-/** Class representing instance of gitlet program in CWD.
+/** Class representing instance of gitlet program in CWD. Its state is
+ * kept in two small text files: HEAD_FILE names the current branch, and
+ * CONFIG_FILE holds "KEY=VALUE" lines, among them the working directory
+ * under WORKTREE_KEY. The head commit is that of the current branch.
+ * Each is read only when first needed. Older repositories kept this
+ * state in a serialized Repository in REPO_LOC, which is converted on
+ * first use.
  * @author Ethan Brown
  */
 public class Repository implements Serializable {
+    /** Version of serialized repositories, as computed for the original
+     * class, so that the REPO_LOC files of older repositories can still
+     * be converted. */
+    private static final long serialVersionUID = -4180913369330447690L;
     /** String representing object directory within .gitlet directory. */
     static final String OBJ_DIR = ".gitlet/obj/";
     /** String representing branches directory within .gitlet directory. */
     static final String BRANCHES = ".gitlet/branches/";
-    /** String representing index directory within .gitlet directory. */
-    static final String INDEX = ".gitlet/index/";
-    /** String representing stage for addition within index. */
-    static final String ADD_STAGE = ".gitlet/index/add/";
-    /** String representing stage for removal within index. */
-    static final String REM_STAGE = ".gitlet/index/rem/";
     /** String representing location of repository
-     * file within .gitlet directory. */
+     * file within .gitlet directory in older repositories. */
     static final String REPO_LOC = ".gitlet/REPOLOC";
+    /** Location of the file naming the current branch. */
+    static final String HEAD_FILE = ".gitlet/HEAD";
+    /** Text preceding the name of the current branch in HEAD_FILE. */
+    static final String HEAD_PREFIX = "ref: ";
+    /** Location of the repository's configuration. */
+    static final String CONFIG_FILE = ".gitlet/config";
+    /** Configuration key of the working directory. */
+    static final String WORKTREE_KEY = "worktree";
+    /** Approximate number of bytes of files add reads into memory at
+     * once. */
+    static final long ADD_BATCH_BYTES = 64 << 20;
+    /** Most threads writing files during a checkout. */
+    static final int CHECKOUT_THREADS = 8;
+    /** Format of the dates shown by log. */
+    static final String LOG_DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+    /** Size in characters of the buffer of log output. */
+    static final int LOG_BUFFER_SIZE = 1 << 16;
     /** FILE which is current working directory of .gitlet directory. */
     private File workingDirectory;
 
@@ -39,15 +81,15 @@ public class Repository implements Serializable {
         long dateLong = 0;
         Date d = new Date(dateLong);
         Commit c = new Commit(this, "initial commit", null, d);
-        byte[] cSerial = Utils.serialize(c);
-        head = Utils.sha1((Object) cSerial);
-        currBranchName = "master";
-        currBranch = BRANCHES + "master";
-        File g = new File(currBranch);
-        Utils.writeObject(g, c);
-    }
-    /** String representing path to current head branch of repository. */
-    private String currBranch;
+        head = c.getID();
+        Refs.write("master", head);
+        setBranch("master");
+        writeConfig(f);
+    }
+    /** The repository in the working directory, whose state is read from
+     * its files as it is needed. */
+    private Repository() {
+    }
     /** String representing name of current head branch of repository. */
     private String currBranchName;
     /** String shaID of current head commit of repository. */
@@ -62,65 +104,239 @@ public class Repository implements Serializable {
             f.mkdir();
             File a = new File(OBJ_DIR);
             File b = new File(BRANCHES);
-            File c = new File(INDEX);
-            File d = new File(ADD_STAGE);
-            File e = new File(REM_STAGE);
+            File m = new File(MessageIndex.INDEX_DIR);
 
             a.mkdir();
             b.mkdir();
-            c.mkdir();
-            d.mkdir();
-            e.mkdir();
+            m.mkdir();
             File cwd = new File(System.getProperty("user.dir"));
-            Repository repo = new Repository(cwd);
-            File repoFile = new File(REPO_LOC);
-            Utils.writeObject(repoFile, repo);
+            new Repository(cwd);
         }
     }
     /** Returns current REPOSITORY instance. */
     public static Repository getRepo() {
-        File repoFile = new File(REPO_LOC);
-        Repository rV = Utils.readObject(repoFile, Repository.class);
-        return rV;
-    }
-    /** Used to update repository REPO. */
-    public static void updateRepo(Repository repo) {
-        File repoFile = new File(REPO_LOC);
-        repoFile.delete();
-        Utils.writeObject(repoFile, repo);
-    }
-    /** Adds copy of file G to staging area as it currently exists. */
-    void add(File g) {
-        File f = g;
-        Blob b = new Blob(f);
-        byte[] bSerial = Utils.serialize(b);
-        String bSHA = Utils.sha1((Object) bSerial);
-        Commit c = getCommit(this.head);
-        File staging = new File(ADD_STAGE + b.getName());
-        File stagingRem = new File(REM_STAGE + b.getName());
-        File blobFile = new File(OBJ_DIR + bSHA);
-        if (!c.getContents().isEmpty()
-                && c.getContents().containsKey(f.getName())) {
-            String commitBlobSHA = c.getContents().get(f.getName());
-            if (commitBlobSHA.equals(bSHA)) {
-                if (staging.exists()) {
-                    staging.delete();
-                }
-                if (stagingRem.exists()) {
-                    stagingRem.delete();
-                }
-                return;
+        if (!Transaction.exists(new File(HEAD_FILE))
+                && new File(REPO_LOC).exists()) {
+            Repository old = readLegacy(new File(REPO_LOC));
+            old.setBranch(old.currBranchName);
+            writeConfig(old.workingDirectory);
+            Transaction.delete(new File(REPO_LOC));
+        }
+        return new Repository();
+    }
+    /** Returns the Repository serialized in FILE by an older version of
+     * gitlet. Versions that stored the same fields as this class did not
+     * fix their serialVersionUID, so it is ignored when the fields
+     * match. */
+    private static Repository readLegacy(File file) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new FileInputStream(file)) {
+                 @Override
+                 protected ObjectStreamClass readClassDescriptor()
+                     throws IOException, ClassNotFoundException {
+                     ObjectStreamClass desc = super.readClassDescriptor();
+                     ObjectStreamClass local =
+                         ObjectStreamClass.lookup(Repository.class);
+                     if (desc.getName().equals(local.getName())
+                         && sameFields(desc, local)) {
+                         return local;
+                     }
+                     return desc;
+                 }
+             }) {
+            return (Repository) in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+    /** Returns true iff classes A and B serialize the same fields. */
+    private static boolean sameFields(ObjectStreamClass a,
+                                      ObjectStreamClass b) {
+        ObjectStreamField[] x = a.getFields();
+        ObjectStreamField[] y = b.getFields();
+        if (x.length != y.length) {
+            return false;
+        }
+        for (int i = 0; i < x.length; i += 1) {
+            if (!x[i].getName().equals(y[i].getName())
+                || !x[i].getTypeString().equals(y[i].getTypeString())) {
+                return false;
             }
         }
-        if (staging.exists()) {
-            staging.delete();
+        return true;
+    }
+    /** Makes BRANCH the current branch. */
+    private void setBranch(String branch) {
+        Transaction.write(new File(HEAD_FILE), HEAD_PREFIX + branch
+                              + "\n");
+        this.currBranchName = branch;
+        this.head = null;
+    }
+    /** Writes the configuration of a repository whose working directory
+     * is DIR. */
+    private static void writeConfig(File dir) {
+        Transaction.write(new File(CONFIG_FILE), WORKTREE_KEY + "="
+                              + dir.getAbsolutePath() + "\n");
+    }
+    /** Returns the value of KEY in the configuration, or null if it has
+     * none. */
+    static String config(String key) {
+        byte[] contents = Transaction.read(new File(CONFIG_FILE));
+        if (contents == null) {
+            return null;
+        }
+        String text = new String(contents, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq != -1 && line.substring(0, eq).trim().equals(key)) {
+                return line.substring(eq + 1).trim();
+            }
         }
-        if (stagingRem.exists()) {
-            stagingRem.delete();
+        return null;
+    }
+    /** Stages the files named by OPERANDS, relative to the working
+     * directory, as they currently exist. A directory, including ".",
+     * stands for every file beneath it. Files are read, hashed and
+     * compressed in parallel on the common fork-join pool, in batches of
+     * about ADD_BATCH_BYTES. The new objects of each batch are then
+     * written in order of ID, and the index is written once at the end.
+     * Files whose status is unchanged since they were last hashed are
+     * not read at all. */
+    void add(List<String> operands) {
+        TreeMap<String, StagingIndex.Entry> files = new TreeMap<>();
+        for (String operand : operands) {
+            File f = new File(getWorkingDirectory(), operand);
+            if (!f.exists()) {
+                throw new GitletException("File does not exist.");
+            }
+            collectFiles(pathOf(f), files);
+        }
+        HashMap<String, String> tracked = getCommit(getHEAD()).getContents();
+        StagingIndex stage = StagingIndex.read();
+        ArrayList<String> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (String path : files.keySet()) {
+            batch.add(path);
+            batchBytes += files.get(path).getSize();
+            if (batchBytes >= ADD_BATCH_BYTES) {
+                addBatch(batch, files, tracked, stage);
+                batch.clear();
+                batchBytes = 0;
+            }
         }
-        Utils.writeObject(blobFile, b);
-        Utils.writeObject(staging, b);
-        Repository.updateRepo(this);
+        addBatch(batch, files, tracked, stage);
+        stage.write();
+    }
+    /** Stages the files under the paths in BATCH, whose status is given
+     * in FILES, given the contents TRACKED of the head commit and the
+     * index STAGE. */
+    private void addBatch(List<String> batch,
+                          Map<String, StagingIndex.Entry> files,
+                          HashMap<String, String> tracked,
+                          StagingIndex stage) {
+        List<Hashed> hashed = batch.parallelStream()
+            .map(path -> hash(path, files.get(path), tracked, stage))
+            .collect(Collectors.toList());
+        TreeMap<String, byte[]> objects = new TreeMap<>();
+        for (Hashed h : hashed) {
+            if (h.data != null) {
+                objects.put(h.id, h.data);
+            }
+        }
+        for (Map.Entry<String, byte[]> e : objects.entrySet()) {
+            ObjectStore.writeEncoded(e.getKey(), e.getValue());
+        }
+        for (Hashed h : hashed) {
+            if (h.id.equals(tracked.get(h.path))) {
+                stage.track(h.path, h.id, files.get(h.path));
+            } else {
+                stage.add(h.path, h.id, files.get(h.path));
+            }
+        }
+    }
+    /** Returns the blob ID of the file at PATH, whose status is STAT,
+     * with its stored form if that is not yet in the object store, given
+     * the contents TRACKED of the head commit and the index STAGE. Large
+     * files are stored in chunks on the spot instead. Safe to call from
+     * several threads. */
+    private Hashed hash(String path, StagingIndex.Entry stat,
+                        HashMap<String, String> tracked,
+                        StagingIndex stage) {
+        String id = stage.cachedID(path, stat);
+        if (id != null) {
+            return new Hashed(path, id, null);
+        }
+        File f = new File(getWorkingDirectory(), path);
+        if (stat.getSize() >= ObjectStore.chunkThreshold()) {
+            return new Hashed(path, ObjectStore.writeChunked(f), null);
+        }
+        Blob b = new Blob(path, Utils.readContents(f));
+        id = b.getID();
+        if (id.equals(tracked.get(path)) || ObjectStore.contains(id)) {
+            return new Hashed(path, id, null);
+        }
+        return new Hashed(path, id,
+                          ObjectStore.encodeBlob(id, b, tracked.get(path)));
+    }
+    /** A file hashed by add. */
+    private static class Hashed {
+        /** A file tracked under PATH holding the blob with ID, whose
+         * stored form is DATA, or null if it is already stored. */
+        Hashed(String path, String id, byte[] data) {
+            this.path = path;
+            this.id = id;
+            this.data = data;
+        }
+        /** Path of the file. */
+        private final String path;
+        /** ID of the file's blob. */
+        private final String id;
+        /** Stored form of the blob, or null. */
+        private final byte[] data;
+    }
+    /** Adds to FILES the status of every plain file at or beneath PATH,
+     * relative to the working directory, keyed by its path. Skips the
+     * .gitlet directory. Each file is examined with a single stat. */
+    private void collectFiles(String path,
+                              Map<String, StagingIndex.Entry> files) {
+        File f = path.isEmpty() ? getWorkingDirectory()
+            : new File(getWorkingDirectory(), path);
+        StagingIndex.Entry stat = StagingIndex.stat(f);
+        if (stat.getMode() != StagingIndex.MODE_DIRECTORY) {
+            if (stat.getMode() != 0) {
+                files.put(path, stat);
+            }
+            return;
+        }
+        String[] children = f.list();
+        if (children == null
+                || path.equals(Main.GITLET_DIRECTORY.getName())) {
+            return;
+        }
+        for (String child : children) {
+            collectFiles(path.isEmpty() ? child : path + "/" + child, files);
+        }
+    }
+    /** Returns the path of F relative to the working directory, with
+     * components separated by '/', or "" for the working directory
+     * itself. */
+    String pathOf(File f) {
+        Path root = getWorkingDirectory().toPath().toAbsolutePath().normalize();
+        Path path = f.toPath().toAbsolutePath().normalize();
+        return root.relativize(path).toString()
+            .replace(File.separatorChar, '/');
+    }
+    /** Returns the paths, as for pathOf, of all plain files in the
+     * working directory and its subdirectories, in order. */
+    List<String> workingFiles() {
+        return new ArrayList<>(workingStatus().keySet());
+    }
+    /** Returns the status of every file listed by workingFiles, keyed by
+     * its path. */
+    TreeMap<String, StagingIndex.Entry> workingStatus() {
+        TreeMap<String, StagingIndex.Entry> files = new TreeMap<>();
+        collectFiles("", files);
+        return files;
     }
     /** Method used to commit given file within String[] ARGS. */
     public static void commitComm(String[] args) {
@@ -128,90 +344,101 @@ public class Repository implements Serializable {
             throw new GitletException("Please enter a commit message.");
         }
         Repository repo = Repository.getRepo();
-        Commit head = repo.getCommit(repo.head);
+        Commit head = repo.getCommit(repo.getHEAD());
         Date d = new Date();
         Commit c = new Commit(repo, args[1], head, d);
-        byte[] cSerial = Utils.serialize(c);
-        String cSHA = Utils.sha1((Object) cSerial);
-        File branchFile = new File(repo.getCurrBranch());
-        if (branchFile.exists()) {
-            branchFile.delete();
-        }
-        repo.head = cSHA;
-        Utils.writeObject(branchFile, c);
-        Repository.updateRepo(repo);
-    }
-    /** Returns location of current head branch of repository. */
-    private String getCurrBranch() {
-        return this.currBranch;
+        repo.head = c.getID();
+        Refs.write(repo.getCurrBranchName(), repo.head);
     }
     /** Takes file S as it exists in commit with shaID COM and places
      * it in working directory overwriting the version of the file
      * that's already there if there is one.*/
     void checkout(String com, String s) {
-        File f = new File(s);
+        String path = pathOf(new File(getWorkingDirectory(), s));
         if (com.length() < Utils.UID_LENGTH) {
-            File objects = new File(OBJ_DIR);
-            String[] shaIDs = objects.list();
-            if (shaIDs != null) {
-                for (String string : shaIDs) {
-                    if (string.indexOf(com) == 0) {
-                        com = string;
-                    }
-                }
-            }
+            com = CommitGraph.load().resolve(com);
         }
         Commit headComm = getCommit(com);
-        if (headComm.getContents().containsKey(f.getName())) {
-            String checkoutFileSHA = headComm.getContents().get(f.getName());
-            File checkoutFileBlob = new File(OBJ_DIR + checkoutFileSHA);
-            Blob b = Utils.readObject(checkoutFileBlob, Blob.class);
-            File cwdVersion = new File(workingDirectory
-                    + "/" + f.getName());
+        if (headComm.getContents().containsKey(path)) {
+            String checkoutFileSHA = headComm.getContents().get(path);
+            File cwdVersion = new File(getWorkingDirectory(), path);
             if (cwdVersion.exists()) {
                 cwdVersion.delete();
             }
-            String checkoutFileStr = new String(b.getContents());
-            Utils.writeContents(cwdVersion, checkoutFileStr);
+            materialize(checkoutFileSHA, cwdVersion);
         } else {
             throw new GitletException("File does not exist in that commit.");
         }
-        Repository.updateRepo(this);
     }
     /** Returns commit with shaID S. */
     Commit getCommit(String s) {
-        File headFile = new File(Repository.OBJ_DIR + s);
-        if (!headFile.exists()) {
+        try {
+            return ObjectStore.readCommit(s);
+        } catch (IllegalArgumentException excp) {
             throw new GitletException("No commit with that id exists.");
         }
-        return Utils.readObject(headFile, Commit.class);
-    }
-    /** Starting at the commit with shaID S, display information about each
-     * commit backwards along the commit tree if its shaID is not
-     * contained in A. Returns ArrayList containing shaID's of
-     * commits that have been printed in current log session. **/
-    ArrayList<String> log(String s, ArrayList<String> a) {
-        SimpleDateFormat formatter = new
-                SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-        Commit headCom = getCommit(s);
-        String currID = s;
-        while (headCom != null) {
-            if (!a.contains(currID)) {
-                a.add(currID);
-                String currDate = formatter.format(headCom.getDate());
-                System.out.println("===");
-                System.out.println("commit " + currID);
-                System.out.println("Date: " + currDate);
-                System.out.println(headCom.getMessage());
-                System.out.print(System.lineSeparator());
-            }
-            if (headCom.getParent() == null) {
+    }
+    /** Starting at the commit with shaID S, displays information about
+     * each commit backwards along its first parents, newest first. Shows
+     * at most LIMIT commits, skips those dated after UNTIL, and stops at
+     * the first dated before SINCE; either date may be null. Commits are
+     * read only as they are reached, so the cost depends on the number
+     * of commits shown rather than on the length of the history. */
+    void log(String s, int limit, Date since, Date until) {
+        PrintWriter out = logWriter();
+        SimpleDateFormat formatter = null;
+        int shown = 0;
+        for (Commit c : firstParents(s)) {
+            if (shown >= limit
+                    || (since != null && c.getDate().before(since))) {
                 break;
             }
-            currID = headCom.getParent();
-            headCom = getCommit(headCom.getParent());
+            if (until == null || !c.getDate().after(until)) {
+                if (formatter == null) {
+                    formatter = new SimpleDateFormat(LOG_DATE_FORMAT);
+                }
+                printLog(out, formatter, c);
+                shown += 1;
+            }
         }
-        return a;
+        out.flush();
+    }
+    /** Returns the commits along the first parents of the commit with
+     * shaID S, starting with that commit. Each is read only when the
+     * iteration reaches it. */
+    Iterable<Commit> firstParents(String s) {
+        return () -> new Iterator<Commit>() {
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+            @Override
+            public Commit next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Commit c = getCommit(next);
+                next = c.getParent();
+                return c;
+            }
+            /** ShaID of the next commit, or null at the end. */
+            private String next = s;
+        };
+    }
+    /** Returns a writer buffering output to the standard output, which
+     * must be flushed once printing is done. */
+    private static PrintWriter logWriter() {
+        return new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out), LOG_BUFFER_SIZE));
+    }
+    /** Prints to OUT the log entry of commit C, dated with FORMATTER. */
+    private static void printLog(PrintWriter out, SimpleDateFormat formatter,
+                                 Commit c) {
+        out.println("===");
+        out.println("commit " + c.getID());
+        out.println("Date: " + formatter.format(c.getDate()));
+        out.println(c.getMessage());
+        out.println();
     }
     /** Unstage file F if it is currently staged for addition.
      * If the file is tracked in the current commit, stage it
@@ -219,23 +446,17 @@ public class Repository implements Serializable {
      * if the user has not already done so */
     void remove(File f) {
         boolean errorBool = true;
-        Commit c = getCommit(this.head);
-        File staging = new File(REM_STAGE + f.getName());
-        String fileName = f.getName();
-        File stagingAddDir = new File(Repository.ADD_STAGE);
-        File[] addDirectoryListing = stagingAddDir.listFiles();
-        if (addDirectoryListing != null) {
-            for (File file: addDirectoryListing) {
-                if (f.getName().equals(file.getName())) {
-                    file.delete();
-                    errorBool = false;
-                }
-            }
+        Commit c = getCommit(getHEAD());
+        StagingIndex stage = StagingIndex.read();
+        String fileName = pathOf(f);
+        if (stage.isAdded(fileName)) {
+            stage.unstage(fileName);
+            errorBool = false;
         }
         Set<String> fileNames = c.getContents().keySet();
         for (String s: fileNames) {
-            if (f.getName().equals(s)) {
-                Utils.writeObject(staging, fileName);
+            if (fileName.equals(s)) {
+                stage.remove(fileName);
                 errorBool = false;
                 if (f.exists()) {
                     f.delete();
@@ -245,89 +466,121 @@ public class Repository implements Serializable {
         if (errorBool) {
             throw new GitletException("No reason to remove the file.");
         }
-        Repository.updateRepo(this);
+        stage.write();
     }
-    /** Like log, except displays information about all commits ever made. */
+    /** Like log, except displays information about all commits ever
+     * made: the history of each branch, then every other commit. Each
+     * commit is shown once; a branch's history ends at the first commit
+     * already shown, since its first parents have been shown too. */
     void global() {
-        File branchDir = new File(BRANCHES);
-        File[] branchFiles = branchDir.listFiles();
-        ArrayList<String> passedIn = new ArrayList<>();
-        for (File f: branchFiles) {
-            Commit c = Utils.readObject(f, Commit.class);
-            byte[] content = Utils.serialize(c);
-            String cID = Utils.sha1((Object) content);
-            passedIn = this.log(cID, passedIn);
-        }
-        File objDir = new File(OBJ_DIR);
-        File[] objFiles = objDir.listFiles();
-        for (File f: objFiles) {
-            try {
-                Commit orphan = Utils.readObject(f, Commit.class);
-                byte[] content = Utils.serialize(orphan);
-                String orphanID = Utils.sha1((Object) content);
-                passedIn = this.log(orphanID, passedIn);
-            } catch (IllegalArgumentException ignored) {
-                ignored.getMessage();
+        PrintWriter out = logWriter();
+        SimpleDateFormat formatter = new SimpleDateFormat(LOG_DATE_FORMAT);
+        HashSet<String> seen = new HashSet<>();
+        for (String branch: Refs.names()) {
+            for (Commit c : firstParents(Refs.read(branch))) {
+                if (!seen.add(c.getID())) {
+                    break;
+                }
+                printLog(out, formatter, c);
+            }
+        }
+        CommitGraph graph = CommitGraph.load();
+        for (int p = 0; p < graph.size(); p += 1) {
+            String id = graph.idAt(p);
+            if (seen.add(id)) {
+                printLog(out, formatter, getCommit(id));
             }
         }
+        out.flush();
     }
-    /** Prints shaID of all commits with message STRMES. */
+    /** Prints shaID of all commits with message STRMES, answering from
+     * the message index when the repository has one. */
     void find(String strMes) {
+        if (MessageIndex.exists()) {
+            printFound(MessageIndex.exact(strMes));
+            return;
+        }
         boolean commitFound = false;
-        File branchDir = new File(BRANCHES);
-        File[] branchFiles = branchDir.listFiles();
-        ArrayList<String> seenSoFar = new ArrayList<>();
-        if (branchFiles != null) {
-            for (File f: branchFiles) {
-                Commit c = Utils.readObject(f, Commit.class);
-                byte[] content = Utils.serialize(c);
-                String id = Utils.sha1((Object) content);
-                while (true) {
-                    if (c.getMessage().equals(strMes)
-                            && !seenSoFar.contains(id)) {
-                        commitFound = true;
-                        System.out.println(id);
-                        seenSoFar.add(id);
-                    }
-                    if (c.getParent() == null) {
-                        break;
-                    }
-                    id = c.getParent();
-                    c = getCommit(c.getParent());
+        HashSet<String> seenSoFar = new HashSet<>();
+        for (String branch: Refs.names()) {
+            String id = Refs.read(branch);
+            Commit c = getCommit(id);
+            while (true) {
+                if (c.getMessage().equals(strMes)
+                        && !seenSoFar.contains(id)) {
+                    commitFound = true;
+                    System.out.println(id);
+                    seenSoFar.add(id);
                 }
+                if (c.getParent() == null) {
+                    break;
+                }
+                id = c.getParent();
+                c = getCommit(c.getParent());
             }
         }
-        File objDir = new File(OBJ_DIR);
-        File[] objFiles = objDir.listFiles();
-        for (File f: objFiles) {
-            try {
-                Commit orphan = Utils.readObject(f, Commit.class);
-                byte[] content = Utils.serialize(orphan);
-                String orphanID = Utils.sha1((Object) content);
-                if (orphan.getMessage().equals(strMes)
-                        && !seenSoFar.contains(orphanID)) {
-                    commitFound = true;
-                    System.out.println(orphanID);
-                    seenSoFar.add(orphanID);
-                }
-            } catch (IllegalArgumentException ignored) {
-                ignored.getMessage();
+        CommitGraph graph = CommitGraph.load();
+        for (int p = 0; p < graph.size(); p += 1) {
+            String orphanID = graph.idAt(p);
+            Commit orphan = getCommit(orphanID);
+            if (orphan.getMessage().equals(strMes)
+                    && !seenSoFar.contains(orphanID)) {
+                commitFound = true;
+                System.out.println(orphanID);
+                seenSoFar.add(orphanID);
             }
         }
         if (!commitFound) {
             throw new GitletException("Found no commit with that message.");
         }
     }
+    /** Prints shaID of all commits whose message contains WORD as a
+     * whole word, ignoring case. */
+    void findWord(String word) {
+        if (!MessageIndex.exists()) {
+            throw new GitletException("No message index; run reindex.");
+        }
+        printFound(MessageIndex.word(word));
+    }
+    /** Prints shaID of all commits whose message contains TEXT,
+     * ignoring case. */
+    void grep(String text) {
+        ArrayList<String> found = new ArrayList<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        List<String> candidates;
+        if (MessageIndex.exists() && text.length() >= MessageIndex.GRAM) {
+            candidates = MessageIndex.candidates(text);
+        } else {
+            candidates = new ArrayList<>();
+            CommitGraph graph = CommitGraph.load();
+            for (int p = 0; p < graph.size(); p += 1) {
+                candidates.add(graph.idAt(p));
+            }
+        }
+        for (String id : candidates) {
+            String message = getCommit(id).getMessage();
+            if (message.toLowerCase(Locale.ROOT).contains(lower)) {
+                found.add(id);
+            }
+        }
+        printFound(found);
+    }
+    /** Prints each shaID in IDS, or reports that no commit was found. */
+    private void printFound(List<String> ids) {
+        if (ids.isEmpty()) {
+            throw new GitletException("Found no commit with that message.");
+        }
+        for (String id : ids) {
+            System.out.println(id);
+        }
+    }
     /** Displays what branches currently exist, and marks the
      * current branch with a *. Also displays what files have
      * been staged for addition or removal. */
     void status() {
         System.out.println("=== Branches ===");
-        File branchDir = new File(BRANCHES);
-        String[] branchFiles = branchDir.list();
-        Arrays.sort(branchFiles);
-        for (String s: branchFiles) {
-            if (s.equals(this.currBranchName)) {
+        for (String s: Refs.names()) {
+            if (s.equals(getCurrBranchName())) {
                 System.out.println("*" + s);
             } else {
                 System.out.println(s);
@@ -335,36 +588,91 @@ public class Repository implements Serializable {
         }
         System.out.print(System.lineSeparator());
         System.out.println("=== Staged Files ===");
-        File addDir = new File(ADD_STAGE);
-        String[] addFiles = addDir.list();
-        Arrays.sort(addFiles);
-        for (String s: addFiles) {
+        StagingIndex stage = StagingIndex.read();
+        for (String s: stage.added()) {
             System.out.println(s);
         }
         System.out.print(System.lineSeparator());
         System.out.println("=== Removed Files ===");
-        File remDir = new File(REM_STAGE);
-        String[] remFiles = remDir.list();
-        Arrays.sort(remFiles);
-        for (String s: remFiles) {
+        for (String s: stage.removed()) {
             System.out.println(s);
         }
         System.out.print(System.lineSeparator());
+        printChanges(stage);
+    }
+    /** Prints the modifications not staged for commit and the untracked
+     * files of the working directory, given the index STAGE. Only files
+     * whose status changed since they were last hashed are hashed again,
+     * in parallel. Those found unchanged get their new status recorded,
+     * so that the next status need not hash them, unless another command
+     * holds the RepoLock or has changed the index since it was read. */
+    private void printChanges(StagingIndex stage) {
+        HashMap<String, String> tracked = getCommit(getHEAD()).getContents();
+        TreeMap<String, StagingIndex.Entry> status = workingStatus();
+        Set<String> working = status.keySet();
+        TreeSet<String> names = new TreeSet<>(tracked.keySet());
+        names.addAll(stage.added());
+        names.addAll(working);
+        HashSet<String> untracked = new HashSet<>();
+        HashMap<String, String> current = new HashMap<>();
+        ArrayList<String> stale = new ArrayList<>();
+        for (String name : working) {
+            if (!stage.isAdded(name) && (!tracked.containsKey(name)
+                    || stage.isRemoved(name))) {
+                untracked.add(name);
+                continue;
+            }
+            String id = stage.cachedID(name, status.get(name));
+            if (id == null) {
+                stale.add(name);
+            } else {
+                current.put(name, id);
+            }
+        }
+        Map<String, String> hashed = stale.parallelStream().collect(
+            Collectors.toMap(n -> n,
+                n -> Blob.hash(new File(getWorkingDirectory(), n))));
+        current.putAll(hashed);
+        boolean refreshed = false;
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String name : names) {
+            String expected = stage.isAdded(name)
+                    ? stage.get(name).getID() : tracked.get(name);
+            if (untracked.contains(name)) {
+                continue;
+            } else if (!working.contains(name)) {
+                if (stage.isAdded(name) || (tracked.containsKey(name)
+                        && !stage.isRemoved(name))) {
+                    System.out.println(name + " (deleted)");
+                }
+            } else if (!current.get(name).equals(expected)) {
+                System.out.println(name + " (modified)");
+            } else if (hashed.containsKey(name)) {
+                if (stage.isAdded(name)) {
+                    stage.add(name, expected, status.get(name));
+                } else {
+                    stage.track(name, expected, status.get(name));
+                }
+                refreshed = true;
+            }
+        }
         System.out.print(System.lineSeparator());
         System.out.println("=== Untracked Files ===");
+        for (String name : new TreeSet<>(untracked)) {
+            System.out.println(name);
+        }
         System.out.print(System.lineSeparator());
+        if (refreshed && Transaction.upgrade() && stage.isCurrent()) {
+            stage.write();
+        }
     }
     /** Creates new branch named S which points to current head commit. */
     void branch(String s) {
-        File f = new File(BRANCHES + s);
-        if (f.exists()) {
+        if (Refs.exists(s)) {
             throw new GitletException("A branch with "
                     + "that name already exists.");
         }
-        Commit c = getCommit(this.head);
-        Utils.writeObject(f, c);
-        Repository.updateRepo(this);
+        Refs.write(s, getHEAD());
     }
     /** Takes all files in the commit at the head of the
      * branch S, and puts them in the working directory,
@@ -374,224 +682,160 @@ public class Repository implements Serializable {
      * Any files that are tracked in the current branch but are
      * not present in the checked-out branch are deleted.*/
     void branchCheckout(String s) {
-        File currentWorking = workingDirectory;
-        String[] cwdFiles = currentWorking.list();
-        File f = new File(BRANCHES + s);
-        if (!f.exists()) {
+        String cSHAID = Refs.read(s);
+        if (cSHAID == null) {
             throw new GitletException("No such branch exists.");
         }
         if (getCurrBranchName().equals(s)) {
             throw new GitletException("No need to checkout"
                     + " the current branch.");
         }
-        Commit curr = getCommit(getHEAD());
-        HashMap<String, String> currContents = curr.getContents();
-        Set<String> currFileNames = currContents.keySet();
-        Commit c = Utils.readObject(f, Commit.class);
-        HashMap<String, String> cContents = c.getContents();
-        Set<String> fileNames = cContents.keySet();
-        if (cwdFiles != null) {
-            for (String cwdStr : cwdFiles) {
-                if (!currFileNames.contains(cwdStr)
-                        && fileNames.contains(cwdStr)) {
-                    throw new GitletException("There is an untracked file "
-                            + "in the way; delete it, or add "
-                            + "and commit it first.");
+        switchTo(getCommit(cSHAID));
+        setBranch(s);
+    }
+    /** Makes the working directory match commit TARGET, starting from
+     * the head commit, and unstages everything. Only files whose blob
+     * differs between the two commits, found by comparing their trees
+     * without reading the directories they share, or whose status shows
+     * them changed since they were last checked out or added, are written;
+     * the writes run on at most CHECKOUT_THREADS threads. Files tracked
+     * only in the head commit are deleted. The index is written once, at
+     * the end, with the status of every file of TARGET. */
+    private void switchTo(Commit target) {
+        TreeMap<String, String[]> diff =
+            Tree.diff(getCommit(getHEAD()).getTree(), target.getTree());
+        for (Map.Entry<String, String[]> e : diff.entrySet()) {
+            if (e.getValue()[0] == null
+                    && new File(getWorkingDirectory(), e.getKey()).exists()) {
+                throw new GitletException("There is an untracked file "
+                        + "in the way; delete it, or add "
+                        + "and commit it first.");
+            }
+        }
+        HashMap<String, String> wanted = target.getContents();
+        StagingIndex old = StagingIndex.read();
+        StagingIndex stage = new StagingIndex();
+        ArrayList<String> changed = new ArrayList<>();
+        for (String path : wanted.keySet()) {
+            String id = wanted.get(path);
+            File f = new File(getWorkingDirectory(), path);
+            if (!diff.containsKey(path) && f.isFile()) {
+                StagingIndex.Entry stat = StagingIndex.stat(f);
+                if (id.equals(old.cachedID(path, stat))) {
+                    stage.track(path, id, stat);
+                    continue;
                 }
             }
+            changed.add(path);
         }
-        for (String string: currFileNames) {
-            if (!fileNames.contains(string)) {
-                File deleted = new File(workingDirectory
-                        + "/" + string);
-                deleted.delete();
+        for (Map.Entry<String, String[]> e : diff.entrySet()) {
+            if (e.getValue()[1] == null) {
+                new File(getWorkingDirectory(), e.getKey()).delete();
             }
         }
-        byte[] cByte = Utils.serialize(c);
-        String cSHAID = Utils.sha1(cByte);
-        for (String str: fileNames) {
-            this.checkout(cSHAID, str);
+        if (!changed.isEmpty()) {
+            ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(CHECKOUT_THREADS, changed.size()));
+            try {
+                ArrayList<Future<StagingIndex.Entry>> stats =
+                    new ArrayList<>();
+                for (String path : changed) {
+                    File f = new File(getWorkingDirectory(), path);
+                    stats.add(pool.submit(() -> {
+                        materialize(wanted.get(path), f);
+                        return StagingIndex.stat(f);
+                    }));
+                }
+                for (int i = 0; i < changed.size(); i += 1) {
+                    String path = changed.get(i);
+                    stage.track(path, wanted.get(path), stats.get(i).get());
+                }
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                pool.shutdown();
+            }
         }
-        this.head = cSHAID;
-        this.currBranchName = s;
-        this.currBranch = BRANCHES + s;
-        this.clearStage();
-        Repository.updateRepo(this);
+        stage.write();
+    }
+    /** Writes the contents of the blob with ID to file F, creating its
+     * directory if need be. */
+    private static void materialize(String id, File f) {
+        File dir = f.getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        ObjectStore.copyBlob(id, f);
     }
     /** Returns name of current head branch in current repository. */
     String getCurrBranchName() {
-        return this.currBranchName;
-    }
-    /** Clears all files in ADD_STAGE and REM_STAGE. */
-    void clearStage() {
-        File addDir = new File(ADD_STAGE);
-        File remDir = new File(REM_STAGE);
-        File[] addFiles = addDir.listFiles();
-        File[] remFiles = remDir.listFiles();
-        if (addFiles != null) {
-            for (File f: addFiles) {
-                f.delete();
-            }
-        }
-        if (remFiles != null) {
-            for (File f: remFiles) {
-                f.delete();
+        if (this.currBranchName == null) {
+            byte[] contents = Transaction.read(new File(HEAD_FILE));
+            String text = contents == null ? ""
+                : new String(contents, StandardCharsets.UTF_8);
+            if (!text.startsWith(HEAD_PREFIX)) {
+                throw new GitletException("Corrupt HEAD file.");
             }
+            this.currBranchName = text.substring(HEAD_PREFIX.length()).trim();
         }
+        return this.currBranchName;
     }
     /** Removes branch named S. */
     void remBranch(String s) {
-        File f = new File(BRANCHES + s);
-        if (!f.exists()) {
+        if (!Refs.exists(s)) {
             throw new GitletException("A branch with "
                     + "that name does not exist.");
         }
         if (s.equals(getCurrBranchName())) {
             throw new GitletException("Cannot remove the current branch.");
         }
-        f.delete();
+        Refs.delete(s);
     }
     /** Checks out all files in commit with shaID S. S can be abbreviated. */
     void reset(String s) {
-        Commit c = null;
-        if (s.length() == 6) {
-            File objects = new File(OBJ_DIR);
-            String[] shaIDs = objects.list();
-            for (String string: shaIDs) {
-                if (string.indexOf(s) == 0) {
-                    s = string;
-                }
-            }
-        }
-        File f = new File(OBJ_DIR);
-        String[] objFileNames = f.list();
-        if (objFileNames != null) {
-            for (String string: objFileNames) {
-                if (string.equals(s)) {
-                    c = getCommit(s);
-                }
-            }
-        }
-        if (c == null) {
-            throw new GitletException("No commit with that id exists.");
-        }
-        HashMap<String, String> newFileContent = c.getContents();
-        Set<String> newFiles = newFileContent.keySet();
-        File currentWorking = workingDirectory;
-        String[] cwdFiles = currentWorking.list();
-        Commit curr = getCommit(this.head);
-        HashMap<String, String> currFileContent = curr.getContents();
-        Set<String> currFiles = currFileContent.keySet();
-        if (cwdFiles != null) {
-            for (String string: cwdFiles) {
-                if (!currFiles.contains(string)
-                        && newFiles.contains(string)) {
-                    throw new GitletException("There is an untracked "
-                            + "file in the "
-                            + "way; delete it, or add and commit it first.");
-                }
-            }
-        }
-        for (String string: currFiles) {
-            if (!newFiles.contains(string)) {
-                File deleted = new File(workingDirectory
-                        + "/" + string);
-                deleted.delete();
-            }
-        }
-        byte[] cByte = Utils.serialize(c);
-        String cSHAID = Utils.sha1(cByte);
-        for (String str: newFiles) {
-            this.checkout(cSHAID, str);
-        }
-        File currBranchFile = new File(getCurrBranch());
-        currBranchFile.delete();
-        Utils.writeObject(currBranchFile, c);
-        clearStage();
+        s = CommitGraph.load().resolve(s);
+        Commit c = getCommit(s);
+        switchTo(c);
+        String cSHAID = c.getID();
+        Refs.write(getCurrBranchName(), cSHAID);
         this.head = cSHAID;
-        Repository.updateRepo(this);
     }
     /** Returns STRING common ancestor of current branch
-     * and MERGEBRANCH. */
-    String findCommonAncestor(File mergeBranch) {
-        String ancestor = null;
-        int ancestorCount = 1000;
-        int distanceHead = 1000;
-        int counterCurr = 0;
-        int counterBranch = 0;
-        Commit curr = getCommit(getHEAD());
-        byte[] currByte = Utils.serialize(curr);
-        String currSHA = Utils.sha1(currByte);
-        Commit branchCommit = Utils.readObject(mergeBranch, Commit.class);
-        byte[] branchByte = Utils.serialize(branchCommit);
-        String branchSHA = Utils.sha1((Object) branchByte);
-        while (curr != null) {
-            while (branchCommit != null) {
-                if (branchSHA.equals(currSHA)) {
-                    int countThis = counterCurr + counterBranch;
-                    if (countThis < ancestorCount) {
-                        ancestorCount = countThis;
-                        ancestor = branchSHA;
-                        distanceHead = counterCurr;
-                    } else if (countThis == ancestorCount) {
-                        if (counterCurr < distanceHead) {
-                            distanceHead = counterCurr;
-                            ancestor = branchSHA;
-                        }
-                    }
-                }
-                counterBranch += 1;
-                branchSHA = branchCommit.getParent();
-                if (branchSHA != null) {
-                    branchCommit = getCommit(branchSHA);
-                } else {
-                    break;
-                }
-            }
-            counterCurr += 1;
-            counterBranch = 0;
-            currSHA = curr.getParent();
-            branchCommit = Utils.readObject(mergeBranch, Commit.class);
-            branchByte = Utils.serialize(branchCommit);
-            branchSHA = Utils.sha1((Object) branchByte);
-            if (currSHA != null) {
-                curr = getCommit(currSHA);
-            } else {
-                break;
-            }
-        }
-        return ancestor;
+     * and the commit with shaID BRANCHSHA, found by walking the
+     * commit graph. */
+    String findCommonAncestor(String branchSHA) {
+        return CommitGraph.load().mergeBase(getHEAD(), branchSHA);
     }
     /** Checks Branch Files for merge conflicts and through
-     * BRANCHCONTENT, SPLITCONTENT, CURRCONTENT, BRANCHFILES, and S. */
+     * BRANCHCONTENT, SPLITCONTENT, CURRCONTENT, BRANCHFILES, and S,
+     * staging the results in STAGE. A file changed on both sides is
+     * merged line by line, so only overlapping changes conflict. */
     void checkBranchFiles(HashMap<String, String> branchContent,
                           HashMap<String, String> splitContent,
                           HashMap<String, String> currContent,
-                          Set<String> branchFiles, String s) {
+                          Set<String> branchFiles, String s,
+                          StagingIndex stage) {
         for (String file : branchFiles) {
-            File f = new File(workingDirectory + "/" + file);
-            File objF = new File(OBJ_DIR + branchContent.get(file));
+            File f = new File(getWorkingDirectory() + "/" + file);
+            f.getParentFile().mkdirs();
+            String branchBlobID = branchContent.get(file);
             if (!splitContent.containsKey(file)
                     && !currContent.containsKey(file)) {
-                Blob b = Utils.readObject(objF, Blob.class);
                 if (f.exists()) {
                     f.delete();
                 }
-                Utils.writeContents(f, new String(b.getContents()));
-                File addBlob = new File(ADD_STAGE + file);
-                Utils.writeObject(addBlob, b);
+                ObjectStore.copyBlob(branchBlobID, f);
+                stage.add(file, branchBlobID, f);
             } else if (splitContent.containsKey(file)
                     && currContent.containsKey(file)) {
                 if (splitContent.get(file).equals(currContent.get(file))
                         && !splitContent.get(file).equals(
                                 branchContent.get(file))) {
-                    Blob b = Utils.readObject(objF, Blob.class);
                     if (f.exists()) {
                         f.delete();
                     }
-                    Utils.writeContents(f, new String(b.getContents()));
-                    File addBlob = new File(ADD_STAGE + file);
-                    Utils.writeObject(addBlob, b);
+                    ObjectStore.copyBlob(branchBlobID, f);
+                    stage.add(file, branchBlobID, f);
                 }
                 if (!splitContent.get(file).equals
                         (currContent.get(file))
@@ -599,30 +843,27 @@ public class Repository implements Serializable {
                         (branchContent.get(file))
                         && !branchContent.get(file).equals
                         (currContent.get(file))) {
-                    System.out.println("Encountered a merge conflict.");
-                    File currFile = new File(OBJ_DIR
-                            + currContent.get(file));
-                    Blob currBlobFile = Utils.readObject(
-                            currFile, Blob.class);
-                    String currBlobStr = new String(
-                            currBlobFile.getContents());
-                    Blob branchBlob = Utils.readObject(objF, Blob.class);
-                    String branchBlobStr = new String(
-                            branchBlob.getContents());
-                    String contentString = "<<<<<<< HEAD"
-                            + System.lineSeparator()
-                            + currBlobStr + " in " + getCurrBranchName()
-                            + System.lineSeparator()
-                            + "=======" + System.lineSeparator()
-                            + branchBlobStr
-                            + " in " + s;
+                    ThreeWayMerge merged = new ThreeWayMerge(
+                            ObjectStore.readBlob(splitContent.get(file))
+                            .getContents(),
+                            ObjectStore.readBlob(currContent.get(file))
+                            .getContents(),
+                            ObjectStore.readBlob(branchBlobID).getContents(),
+                            s);
+                    if (merged.conflicts() > 0) {
+                        System.out.println("Encountered a merge conflict.");
+                    }
                     if (f.exists()) {
                         f.delete();
                     }
-                    File staging = new File(ADD_STAGE + file);
-                    byte[] newbytes = contentString.getBytes();
-                    Utils.writeObject(staging, newbytes);
-                    Utils.writeContents(f, contentString);
+                    Utils.writeContents(f, merged.result());
+                    Blob result = new Blob(file, merged.result());
+                    String id = result.getID();
+                    if (!ObjectStore.contains(id)) {
+                        ObjectStore.writeBlob(id, result,
+                                              currContent.get(file));
+                    }
+                    stage.add(file, id, f);
                 }
             }
         }
@@ -632,21 +873,18 @@ public class Repository implements Serializable {
         if (s.equals(getCurrBranchName())) {
             throw new GitletException("Cannot merge a branch with itself.");
         }
-        File addDir = new File(ADD_STAGE);
-        File remDir = new File(REM_STAGE);
-        if (addDir.list().length != 0 || remDir.list().length != 0) {
+        StagingIndex stage = StagingIndex.read();
+        if (stage.hasChanges()) {
             throw new GitletException("You have uncommitted changes.");
         }
-        File mergeBranch = new File(BRANCHES + s);
-        if (!mergeBranch.exists()) {
+        String branchSHA = Refs.read(s);
+        if (branchSHA == null) {
             throw new GitletException("A branch with "
                     + "that name does not exist.");
         }
-        String ancestor = findCommonAncestor(mergeBranch);
+        String ancestor = findCommonAncestor(branchSHA);
         if (ancestor != null) {
-            Commit branchCommit = Utils.readObject(mergeBranch, Commit.class);
-            byte[] branchByte = Utils.serialize(branchCommit);
-            String branchSHA = Utils.sha1(branchByte);
+            Commit branchCommit = getCommit(branchSHA);
             if (ancestor.equals(branchSHA)) {
                 System.out.println("Given branch is an "
                         + "ancestor of the current branch.");
@@ -662,42 +900,44 @@ public class Repository implements Serializable {
                         getCommit(getHEAD()).getContents();
                 Set<String> branchFiles = branchContent.keySet();
                 checkBranchFiles(branchContent,
-                        splitContent, currContent, branchFiles, s);
+                        splitContent, currContent, branchFiles, s, stage);
                 for (String file: splitContent.keySet()) {
                     if (currContent.containsKey(file)) {
                         if (splitContent.get(file).equals(currContent.get(file))
                                 && !branchContent.containsKey(file)) {
-                            File remove = new File(REM_STAGE + file);
-                            try {
-                                remove.createNewFile();
-                            } catch (IOException exc) {
-                                throw new GitletException
-                                ("error while creating file");
-                            }
+                            stage.remove(file);
                         }
                     }
                 }
+                stage.write();
             }
-            mergeCommit(s, mergeBranch);
+            mergeCommit(s, branchSHA);
         }
-        Repository.updateRepo(this);
     }
     /** Commit what was just merged from
-     * string S and file MERGEBRANCH. */
-    void mergeCommit(String s, File mergeBranch) {
+     * branch S, whose head commit has shaID BRANCHSHA. */
+    void mergeCommit(String s, String branchSHA) {
         String commitMessage = "Merged " + s
                 + " into " + getCurrBranchName();
         Commit par1 = getCommit(getHEAD());
-        Commit par2 = Utils.readObject(mergeBranch, Commit.class);
+        Commit par2 = getCommit(branchSHA);
         Date d = new Date();
         Commit c = new Commit(this, commitMessage, par1, par2, d);
     }
     /** Returns shaID of current head commit of repository. */
     String getHEAD() {
+        if (this.head == null) {
+            this.head = Refs.read(getCurrBranchName());
+        }
         return this.head;
     }
     /** Returns current working directory of repository. */
     File getWorkingDirectory() {
+        if (this.workingDirectory == null) {
+            String dir = config(WORKTREE_KEY);
+            this.workingDirectory =
+                new File(dir != null ? dir : System.getProperty("user.dir"));
+        }
         return this.workingDirectory;
     }
 }
@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of commands run on a scratch repository.
+ *  @author Ethan Brown
+ */
+public class RepositoryTest {
+
+    /** Removes the repository of the last test. */
+    @After
+    public void cleanUp() {
+        TestRepo.delete();
+    }
+
+    /** Identical large files, whose chunks the parallel hashing of add
+     *  stores at once, are all staged, and read back whole. */
+    @Test
+    public void duplicateLargeFilesTest() {
+        TestRepo.init();
+        String threshold = System.getProperty(ObjectStore.CHUNK_PROPERTY);
+        System.setProperty(ObjectStore.CHUNK_PROPERTY,
+                           Integer.toString(Chunker.MIN_SIZE));
+        try {
+            byte[] data = new byte[LARGE_FILE];
+            new Random(SEED).nextBytes(data);
+            for (int i = 0; i < COPIES; i += 1) {
+                TestRepo.write("big" + i, data);
+            }
+            assertEquals("", TestRepo.run("add", TestRepo.FILES_DIR));
+            StagingIndex stage = StagingIndex.read();
+            List<String> added = stage.added();
+            assertEquals(COPIES, added.size());
+            for (String path : added) {
+                String id = stage.get(path).getID();
+                assertEquals(ObjectStore.MANIFEST, ObjectStore.typeOf(id));
+                ObjectStore.clearCaches();
+                assertArrayEquals(data,
+                                  ObjectStore.readBlob(id).getContents());
+            }
+            for (String id : ObjectStore.ids()) {
+                assertTrue(ObjectStore.contains(id));
+            }
+            assertEquals(0, strays(new File(Repository.OBJ_DIR)));
+        } finally {
+            if (threshold == null) {
+                System.clearProperty(ObjectStore.CHUNK_PROPERTY);
+            } else {
+                System.setProperty(ObjectStore.CHUNK_PROPERTY, threshold);
+            }
+        }
+    }
+
+    /** A file changed differently on two branches merges line by line,
+     *  and the merged file is stored as every other blob is, whole or as
+     *  a delta against our version, never as a serialized Blob. */
+    @Test
+    public void mergeTest() {
+        TestRepo.init();
+        StringBuilder base = new StringBuilder();
+        for (int i = 0; i < MERGE_LINES; i += 1) {
+            base.append("line ").append(i).append('\n');
+        }
+        String text = base.toString();
+        String path = TestRepo.write("f.txt", text);
+        TestRepo.run("add", path);
+        TestRepo.run("commit", "base");
+        TestRepo.run("branch", "other");
+        TestRepo.write("f.txt", "ours\n", text.replace("line 1\n", "one\n"));
+        TestRepo.run("add", path);
+        TestRepo.run("commit", "ours");
+        TestRepo.run("checkout", "other");
+        TestRepo.write("f.txt", "theirs\n", text + "end\n");
+        TestRepo.run("add", path);
+        TestRepo.run("commit", "theirs");
+        TestRepo.run("checkout", "master");
+        String output = TestRepo.run("merge", "other");
+        assertTrue(output.contains("Encountered a merge conflict."));
+        String merged = "<<<<<<< HEAD\nours\n=======\ntheirs\n"
+            + ">>>>>>> other\n" + text.replace("line 1\n", "one\n")
+            + "end\n";
+        assertEquals(merged, Utils.readContentsAsString(new File(path)));
+        String id = new Blob(path, Utils.readContents(new File(path)))
+            .getID();
+        int type = ObjectStore.typeOf(id);
+        assertTrue(type == ObjectStore.DELTA || type == ObjectStore.RAW);
+        ObjectStore.clearCaches();
+        assertEquals(merged, new String(ObjectStore.readBlob(id)
+                                        .getContents(),
+                                        StandardCharsets.UTF_8));
+    }
+
+    /** Status, though it runs on a snapshot, records in the index the
+     *  new status of files touched but unchanged, so that the next status
+     *  finds them unchanged without hashing them. */
+    @Test
+    public void statusRefreshTest() {
+        TestRepo.init();
+        String path = TestRepo.write("f.txt", "text\n");
+        TestRepo.run("add", path);
+        TestRepo.run("commit", "one");
+        File f = new File(path);
+        File index = new File(StagingIndex.STAGE_FILE);
+        assertTrue(f.setLastModified(f.lastModified() - TOUCH_MILLIS));
+        StagingIndex.Entry touched = StagingIndex.stat(f);
+        assertNull(StagingIndex.read().cachedID(path, touched));
+        TestRepo.run("status");
+        assertNotNull(StagingIndex.read().cachedID(path, touched));
+        byte[] refreshed = Utils.readContents(index);
+        TestRepo.run("status");
+        assertArrayEquals(refreshed, Utils.readContents(index));
+    }
+
+    /** Returns the number of files beneath DIR that are not objects,
+     *  such as temporary files left behind. */
+    private static int strays(File dir) {
+        int n = 0;
+        for (File f : dir.listFiles()) {
+            if (f.isDirectory()) {
+                n += strays(f);
+            } else if (f.getName().length()
+                       != Utils.UID_LENGTH - ObjectStore.SHARD_DIGITS) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Seed of random file contents. */
+    private static final long SEED = 3;
+    /** Number of copies of one large file added at once. */
+    private static final int COPIES = 13;
+    /** Size of a large file, split into some dozens of chunks. */
+    private static final int LARGE_FILE = 2 << 20;
+    /** Number of lines of the file merged. */
+    private static final int MERGE_LINES = 100;
+    /** Milliseconds by which a file's modification time is moved back
+     *  to change its status but not its contents. */
+    private static final long TOUCH_MILLIS = 10000;
+}
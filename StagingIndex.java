@@ -0,0 +1,556 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/** The staging area of a repository together with a cache of the file
+ *  system status of tracked files, held in the single file STAGE_FILE.
+ *  The file consists of MAGIC, VERSION and the number of entries,
+ *  followed by the entries in ascending order of path and finally a
+ *  CRC-32C checksum of everything before it, which unlike a SHA-1 costs
+ *  next to nothing even before the JIT has warmed up. Each entry holds
+ *  its state, the mode, size, modification time, change time and inode
+ *  number of the file when it was last hashed, the raw 20-byte ID of its
+ *  blob (all zeros for a removal) and the path in UTF-8 behind its
+ *  length. Staged blobs
+ *  themselves are only stored in the object store. The file is always
+ *  replaced as a whole through a rename, so a reader never sees a
+ *  partial index.
+ *  Entries in state TRACKED stage nothing: they record that a file with
+ *  that status held the given blob, so that a file whose status is
+ *  unchanged need not be hashed again. An entry is only trusted if the
+ *  file was modified before the index was written, since a later change
+ *  within the same clock tick would not show in its status.
+ *  Repositories from before this format keep their staging area in the
+ *  directory LEGACY_DIR, which is converted on first read.
+ *  @author Ethan Brown
+ */
+class StagingIndex {
+
+    /** Location of the index within the .gitlet directory. */
+    static final String STAGE_FILE = ".gitlet/stage";
+    /** Location of the staging directory of older repositories. */
+    static final String LEGACY_DIR = ".gitlet/index/";
+    /** Marks a file as a staging index ("GSTG"). */
+    static final int MAGIC = 0x47535447;
+    /** Version of the on-disk format. Version 1 entries lack the change
+     *  time and inode number, and version 1 files end in a SHA-1 rather
+     *  than a CRC-32C. */
+    static final int VERSION = 2;
+    /** State of a file staged for addition. */
+    static final int ADDED = 1;
+    /** State of a file staged for removal. */
+    static final int REMOVED = 2;
+    /** State of a tracked file that is not staged. */
+    static final int TRACKED = 3;
+    /** Mode of a regular file. */
+    static final int MODE_FILE = 0100644;
+    /** Mode of an executable file. */
+    static final int MODE_EXECUTABLE = 0100755;
+    /** Mode of a directory, as reported by stat but never indexed. */
+    static final int MODE_DIRECTORY = 040000;
+    /** Byte length of the header. */
+    private static final int HEADER_SIZE = 12;
+    /** Byte length of a raw ID, and of the trailing SHA-1 of version 1
+     *  files. */
+    private static final int ID_SIZE = 20;
+    /** Mask selecting the low 16 bits of an int. */
+    private static final int SHORT_MASK = 0xffff;
+    /** Permission bits marking a file as executable by anyone. */
+    private static final int EXECUTE_BITS = 0111;
+    /** Bits of a Unix mode giving the type of a file. */
+    private static final int TYPE_BITS = 0170000;
+    /** Status attributes read for each file, in a single call. */
+    private static final String UNIX_ATTRIBUTES =
+        "unix:size,lastModifiedTime,ctime,ino,mode";
+
+    /** An empty index. */
+    StagingIndex() {
+        entries = new TreeMap<>();
+        written = Long.MAX_VALUE;
+    }
+
+    /** An index holding a copy of ENTRIES. */
+    private StagingIndex(TreeMap<String, Entry> entries) {
+        this.entries = new TreeMap<>(entries);
+        written = Long.MAX_VALUE;
+    }
+
+    /** One path in the index. */
+    static class Entry {
+
+        /** An entry in STATE for the blob with ID, taken from a file
+         *  with MODE, SIZE, modification time MTIME, change time CTIME
+         *  and inode number INODE. */
+        Entry(int state, String id, int mode, long size, long mtime,
+              long ctime, long inode) {
+            this.state = state;
+            this.id = id;
+            this.mode = mode;
+            this.size = size;
+            this.mtime = mtime;
+            this.ctime = ctime;
+            this.inode = inode;
+        }
+
+        /** Returns ADDED, REMOVED or TRACKED. */
+        int getState() {
+            return this.state;
+        }
+
+        /** Returns the ID of the blob, or null for a removal. */
+        String getID() {
+            return this.id;
+        }
+
+        /** Returns the mode of the file when it was hashed. */
+        int getMode() {
+            return this.mode;
+        }
+
+        /** Returns the size of the file when it was hashed. */
+        long getSize() {
+            return this.size;
+        }
+
+        /** Returns the modification time of the file when it was hashed,
+         *  in nanoseconds. */
+        long getMtime() {
+            return this.mtime;
+        }
+
+        /** Returns the change time of the file when it was hashed, in
+         *  nanoseconds. */
+        long getCtime() {
+            return this.ctime;
+        }
+
+        /** Returns the inode number of the file when it was hashed. */
+        long getInode() {
+            return this.inode;
+        }
+
+        /** Returns an entry with this status in state NEWSTATE for the
+         *  blob with NEWID. */
+        Entry with(int newState, String newID) {
+            return new Entry(newState, newID, mode, size, mtime, ctime,
+                             inode);
+        }
+
+        /** Returns true iff OTHER records the same file status. */
+        boolean sameStat(Entry other) {
+            return mode == other.mode && size == other.size
+                && mtime == other.mtime && ctime == other.ctime
+                && inode == other.inode;
+        }
+
+        /** ADDED, REMOVED or TRACKED. */
+        private final int state;
+        /** ID of the blob, or null. */
+        private final String id;
+        /** Mode of the file. */
+        private final int mode;
+        /** Size of the file. */
+        private final long size;
+        /** Modification time of the file. */
+        private final long mtime;
+        /** Change time of the file. */
+        private final long ctime;
+        /** Inode number of the file. */
+        private final long inode;
+    }
+
+    /** Returns the index of the repository, which is empty if nothing is
+     *  staged or cached. The entries last read or written are reused,
+     *  without parsing the file, as long as the file has not changed. An
+     *  index written by the command's Transaction is read as written. */
+    static StagingIndex read() {
+        File f = new File(STAGE_FILE);
+        if (Transaction.changes(f)) {
+            byte[] pending = Transaction.read(f);
+            return pending == null ? new StagingIndex()
+                : parse(pending, Long.MAX_VALUE);
+        }
+        if (!f.exists()) {
+            File legacy = new File(LEGACY_DIR);
+            if (legacy.isDirectory()) {
+                return convert(legacy);
+            }
+            return new StagingIndex();
+        }
+        Entry fileStat = stat(f);
+        long modified = fileStat.getMtime();
+        StagingIndex result;
+        if (lastEntries != null && fileStat.sameStat(lastStat)) {
+            result = new StagingIndex(lastEntries);
+            result.written = modified;
+        } else {
+            result = parse(Utils.readContents(f), modified);
+            remember(fileStat, result.entries);
+        }
+        result.source = fileStat;
+        return result;
+    }
+
+    /** Returns the index encoded as CONTENTS, whose entries for files
+     *  modified at or after WRITTEN must be hashed again. */
+    private static StagingIndex parse(byte[] contents, long written) {
+        ByteBuffer data = ByteBuffer.wrap(contents);
+        if (data.limit() < HEADER_SIZE + Integer.BYTES
+                || data.getInt() != MAGIC) {
+            throw new GitletException("Corrupt staging index.");
+        }
+        int version = data.getInt();
+        boolean valid;
+        if (version == 1) {
+            int end = Math.max(data.limit() - ID_SIZE, HEADER_SIZE);
+            byte[] sum = Arrays.copyOfRange(data.array(), end, data.limit());
+            byte[] body = Arrays.copyOf(data.array(), end);
+            valid = Utils.sha1((Object) body).equals(Utils.toHex(sum));
+        } else {
+            int end = data.limit() - Integer.BYTES;
+            valid = version == VERSION
+                && checksum(data.array(), end) == data.getInt(end);
+        }
+        if (!valid) {
+            throw new GitletException("Corrupt staging index.");
+        }
+        StagingIndex result = new StagingIndex();
+        result.written = written;
+        int count = data.getInt();
+        byte[] raw = new byte[ID_SIZE];
+        for (int i = 0; i < count; i += 1) {
+            int state = data.get();
+            int mode = data.getInt();
+            long size = data.getLong();
+            long mtime = data.getLong();
+            long ctime = version > 1 ? data.getLong() : 0;
+            long inode = version > 1 ? data.getLong() : 0;
+            data.get(raw);
+            byte[] path = new byte[data.getShort() & SHORT_MASK];
+            data.get(path);
+            String id = state == REMOVED ? null : Utils.toHex(raw);
+            result.entries.put(new String(path, StandardCharsets.UTF_8),
+                               new Entry(state, id, mode, size, mtime,
+                                         ctime, inode));
+        }
+        return result;
+    }
+
+    /** Records that the index file with status STAT holds ENTRIES. */
+    private static void remember(Entry stat, TreeMap<String, Entry> entries) {
+        lastStat = stat;
+        lastEntries = new TreeMap<>(entries);
+    }
+
+    /** Replaces the index file with the contents of this index when the
+     *  command's Transaction commits. An empty index is stored as no file
+     *  at all. */
+    void write() {
+        File f = new File(STAGE_FILE);
+        if (entries.isEmpty()) {
+            if (Transaction.exists(f)) {
+                Transaction.delete(f);
+            }
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (String path : entries.keySet()) {
+                Entry e = entries.get(path);
+                out.writeByte(e.getState());
+                out.writeInt(e.getMode());
+                out.writeLong(e.getSize());
+                out.writeLong(e.getMtime());
+                out.writeLong(e.getCtime());
+                out.writeLong(e.getInode());
+                if (e.getID() == null) {
+                    out.write(new byte[ID_SIZE]);
+                } else {
+                    out.write(Utils.fromHex(e.getID()));
+                }
+                byte[] name = path.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] body = bytes.toByteArray();
+        byte[] sum = ByteBuffer.allocate(Integer.BYTES)
+            .putInt(checksum(body, body.length)).array();
+        Transaction.write(f, body, sum);
+        if (!Transaction.changes(f)) {
+            remember(stat(f), entries);
+        }
+    }
+
+    /** Returns true iff the index file is still the one this index was
+     *  read from, or this command's own, so that writing this index
+     *  undoes no other command's changes. */
+    boolean isCurrent() {
+        File f = new File(STAGE_FILE);
+        if (Transaction.changes(f)) {
+            return true;
+        } else if (source == null) {
+            return !f.exists();
+        }
+        return f.exists() && stat(f).sameStat(source);
+    }
+
+    /** Returns the CRC-32C of the first LENGTH bytes of DATA. */
+    private static int checksum(byte[] data, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /** Stages file F, whose contents are the blob with ID, for addition
+     *  under PATH. */
+    void add(String path, String id, File f) {
+        add(path, id, stat(f));
+    }
+
+    /** Stages the file with status STAT, whose contents are the blob with
+     *  ID, for addition under PATH. */
+    void add(String path, String id, Entry stat) {
+        entries.put(path, stat.with(ADDED, id));
+    }
+
+    /** Records that file F, tracked under PATH, holds the blob with ID,
+     *  unstaging PATH if it was staged. */
+    void track(String path, String id, File f) {
+        track(path, id, stat(f));
+    }
+
+    /** Records that the file with status STAT, tracked under PATH, holds
+     *  the blob with ID, unstaging PATH if it was staged. */
+    void track(String path, String id, Entry stat) {
+        entries.put(path, stat.with(TRACKED, id));
+    }
+
+    /** Stages PATH for removal. */
+    void remove(String path) {
+        entries.put(path, new Entry(REMOVED, null, MODE_FILE, 0, 0, 0, 0));
+    }
+
+    /** Unstages PATH. Returns true iff it was staged. */
+    boolean unstage(String path) {
+        Entry e = entries.get(path);
+        if (e == null || e.getState() == TRACKED) {
+            return false;
+        }
+        entries.remove(path);
+        return true;
+    }
+
+    /** Returns the entry for PATH, or null if there is none. */
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /** Returns true iff PATH is staged for addition. */
+    boolean isAdded(String path) {
+        Entry e = entries.get(path);
+        return e != null && e.getState() == ADDED;
+    }
+
+    /** Returns true iff PATH is staged for removal. */
+    boolean isRemoved(String path) {
+        Entry e = entries.get(path);
+        return e != null && e.getState() == REMOVED;
+    }
+
+    /** Returns true iff something is staged. */
+    boolean hasChanges() {
+        for (Entry e : entries.values()) {
+            if (e.getState() != TRACKED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the ID of the blob held by file F, indexed under PATH, if
+     *  its status shows it unchanged since it was last hashed, or null if
+     *  it must be hashed again. F must exist. */
+    String cachedID(String path, File f) {
+        return cachedID(path, stat(f));
+    }
+
+    /** As for cachedID(PATH, F), given the current status STAT of the
+     *  file. */
+    String cachedID(String path, Entry stat) {
+        Entry e = entries.get(path);
+        if (e == null || e.getState() == REMOVED || e.getMtime() >= written) {
+            return null;
+        }
+        return e.sameStat(stat) ? e.getID() : null;
+    }
+
+    /** Turns every addition into a tracked entry and drops every removal,
+     *  as once the staged changes have been committed. */
+    void commit() {
+        for (String path : new ArrayList<>(entries.keySet())) {
+            Entry e = entries.get(path);
+            if (e.getState() == REMOVED) {
+                entries.remove(path);
+            } else if (e.getState() == ADDED) {
+                entries.put(path, e.with(TRACKED, e.getID()));
+            }
+        }
+    }
+
+    /** Removes every entry. */
+    void clear() {
+        entries.clear();
+    }
+
+    /** Returns the paths staged for addition, in order. */
+    List<String> added() {
+        return paths(ADDED);
+    }
+
+    /** Returns the paths staged for removal, in order. */
+    List<String> removed() {
+        return paths(REMOVED);
+    }
+
+    /** Returns the indexed paths and their entries, in order of path. */
+    TreeMap<String, Entry> entries() {
+        return this.entries;
+    }
+
+    /** Returns the paths whose entries are in STATE, in order. */
+    private List<String> paths(int state) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String path : entries.keySet()) {
+            if (entries.get(path).getState() == state) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the current status of file F, which may be of any type,
+     *  as an entry in state TRACKED with no blob. Its mode is MODE_FILE or
+     *  MODE_EXECUTABLE for a regular file, MODE_DIRECTORY for a directory
+     *  and 0 otherwise. Where the file system does not report change
+     *  times and inode numbers, those are recorded as the modification
+     *  time and zero. Throws IllegalArgumentException if F does not
+     *  exist. */
+    static Entry stat(File f) {
+        try {
+            Map<String, Object> a =
+                Files.readAttributes(f.toPath(), UNIX_ATTRIBUTES);
+            int perm = (Integer) a.get("mode");
+            int mode = 0;
+            if ((perm & TYPE_BITS) == MODE_DIRECTORY) {
+                mode = MODE_DIRECTORY;
+            } else if ((perm & TYPE_BITS) == (MODE_FILE & TYPE_BITS)) {
+                mode = (perm & EXECUTE_BITS) != 0 ? MODE_EXECUTABLE
+                    : MODE_FILE;
+            }
+            return new Entry(TRACKED, null, mode, (Long) a.get("size"),
+                             nanos(a.get("lastModifiedTime")),
+                             nanos(a.get("ctime")), (Long) a.get("ino"));
+        } catch (UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            try {
+                BasicFileAttributes a = Files.readAttributes(
+                    f.toPath(), BasicFileAttributes.class);
+                int mode = 0;
+                if (a.isDirectory()) {
+                    mode = MODE_DIRECTORY;
+                } else if (a.isRegularFile()) {
+                    mode = f.canExecute() ? MODE_EXECUTABLE : MODE_FILE;
+                }
+                long mtime = nanos(a.lastModifiedTime());
+                return new Entry(TRACKED, null, mode, a.size(), mtime, mtime,
+                                 0);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the FileTime TIME in nanoseconds. */
+    private static long nanos(Object time) {
+        return ((FileTime) time).to(TimeUnit.NANOSECONDS);
+    }
+
+    /** Returns the staging area held in the add/ and rem/ subdirectories
+     *  of the legacy staging directory DIR, after replacing DIR with an
+     *  index file. The staged blobs, which the legacy directory held
+     *  itself, are first stored as objects. DIR is deleted as part of the
+     *  command's Transaction, so it survives a command that fails. */
+    private static StagingIndex convert(File dir) {
+        StagingIndex result = new StagingIndex();
+        File[] added = new File(dir, "add").listFiles();
+        if (added != null) {
+            for (File f : added) {
+                Blob b = ObjectStore.readFile(f, Blob.class);
+                String id = b.getID();
+                if (!ObjectStore.contains(id)) {
+                    ObjectStore.writeBlob(id, b, null);
+                }
+                result.entries.put(b.getName(),
+                                   new Entry(ADDED, id, MODE_FILE,
+                                             b.getContents().length, 0, 0,
+                                             0));
+            }
+        }
+        String[] removed = new File(dir, "rem").list();
+        if (removed != null) {
+            for (String name : removed) {
+                result.remove(name);
+            }
+        }
+        result.write();
+        for (String sub : new String[] { "add", "rem" }) {
+            File[] files = new File(dir, sub).listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    Transaction.delete(f);
+                }
+                Transaction.delete(new File(dir, sub));
+            }
+        }
+        Transaction.delete(dir);
+        return result;
+    }
+
+    /** Status of the index file last read or written, or null. */
+    private static Entry lastStat;
+    /** Copy of the entries of the index file last read or written, or
+     *  null. */
+    private static TreeMap<String, Entry> lastEntries;
+
+    /** The indexed paths and their entries. */
+    private final TreeMap<String, Entry> entries;
+    /** Modification time of the index file when it was read, in
+     *  nanoseconds. Entries for files modified since are not trusted. */
+    private long written;
+    /** Status of the index file this index was read from, or null if
+     *  there was none. */
+    private Entry source;
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the StagingIndex and its cache of file status.
+ *  @author Ethan Brown
+ */
+public class StagingIndexTest {
+
+    /** Removes the repository of the last test. */
+    @After
+    public void cleanUp() {
+        TestRepo.delete();
+    }
+
+    /** Staged and tracked entries survive a write and a fresh read. */
+    @Test
+    public void roundTripTest() {
+        TestRepo.init();
+        File a = new File(TestRepo.write("a", "a"));
+        File b = new File(TestRepo.write("b", "b"));
+        StagingIndex stage = StagingIndex.read();
+        stage.add(a.getPath(), ID_A, a);
+        stage.track(b.getPath(), ID_B, b);
+        stage.remove("gone");
+        stage.write();
+        setMtime(new File(StagingIndex.STAGE_FILE), LATER);
+        StagingIndex read = StagingIndex.read();
+        assertEquals(List.of(a.getPath()), read.added());
+        assertEquals(List.of("gone"), read.removed());
+        assertTrue(read.isRemoved("gone"));
+        assertEquals(ID_B, read.get(b.getPath()).getID());
+        assertEquals(StagingIndex.TRACKED,
+                     read.get(b.getPath()).getState());
+        assertTrue(read.hasChanges());
+        read.commit();
+        assertFalse(read.hasChanges());
+        assertEquals(ID_A, read.get(a.getPath()).getID());
+    }
+
+    /** An entry is trusted only for a file modified before the index
+     *  was written, and only while the file's status is unchanged. */
+    @Test
+    public void racyTimestampTest() {
+        TestRepo.init();
+        File a = new File(TestRepo.write("a", "a"));
+        setMtime(a, EARLIER);
+        StagingIndex stage = StagingIndex.read();
+        stage.track(a.getPath(), ID_A, a);
+        stage.write();
+        File index = new File(StagingIndex.STAGE_FILE);
+        setMtime(index, EARLIER);
+        assertNull(StagingIndex.read().cachedID(a.getPath(), a));
+        setMtime(index, LATER);
+        assertEquals(ID_A, StagingIndex.read().cachedID(a.getPath(), a));
+        TestRepo.write("a", "b");
+        setMtime(a, EARLIER);
+        assertNull(StagingIndex.read().cachedID(a.getPath(), a));
+        assertNull(StagingIndex.read().cachedID("other", a));
+    }
+
+    /** An index is current until another writes over its file. */
+    @Test
+    public void isCurrentTest() {
+        TestRepo.init();
+        File a = new File(TestRepo.write("a", "a"));
+        StagingIndex first = StagingIndex.read();
+        assertTrue(first.isCurrent());
+        StagingIndex second = StagingIndex.read();
+        second.add(a.getPath(), ID_A, a);
+        second.write();
+        assertFalse(first.isCurrent());
+        assertTrue(StagingIndex.read().isCurrent());
+    }
+
+    /** A damaged index is reported, not misread. */
+    @Test
+    public void corruptTest() {
+        TestRepo.init();
+        File a = new File(TestRepo.write("a", "a"));
+        StagingIndex stage = StagingIndex.read();
+        stage.add(a.getPath(), ID_A, a);
+        stage.write();
+        File index = new File(StagingIndex.STAGE_FILE);
+        byte[] data = Utils.readContents(index);
+        data[data.length / 2] ^= 1;
+        Utils.writeContents(index, data);
+        setMtime(index, LATER);
+        try {
+            StagingIndex.read();
+            fail("read a corrupt index");
+        } catch (GitletException excp) {
+            assertEquals("Corrupt staging index.", excp.getMessage());
+        }
+    }
+
+    /** Sets the modification time of F to MILLIS. */
+    private static void setMtime(File f, long millis) {
+        try {
+            Files.setLastModifiedTime(f.toPath(),
+                                      FileTime.fromMillis(millis));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A blob ID. */
+    private static final String ID_A = Utils.sha1("a");
+    /** Another blob ID. */
+    private static final String ID_B = Utils.sha1("b");
+    /** A modification time in milliseconds. */
+    private static final long EARLIER = 1_000_000_000_000L;
+    /** A later modification time in milliseconds. */
+    private static final long LATER = EARLIER + 1000;
+}
@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assume.assumeFalse;
+
+/** A scratch repository for tests that run commands. Commands find the
+ *  repository in the current directory, so it is made there, and the
+ *  files it tracks are kept beneath FILES_DIR. Tests using one are
+ *  skipped when the current directory already holds a repository.
+ *  @author Ethan Brown
+ */
+class TestRepo {
+
+    /** Directory, relative to the repository, of the files tests make. */
+    static final String FILES_DIR = "gitlet-test-files";
+
+    /** Makes a new repository holding only the initial commit, skipping
+     *  the calling test if there is one already. */
+    static void init() {
+        assumeFalse(Main.GITLET_DIRECTORY.exists());
+        assumeFalse(new File(FILES_DIR).exists());
+        made = true;
+        new File(FILES_DIR).mkdirs();
+        run("init");
+    }
+
+    /** Runs the command given by ARGS in this process, and returns what
+     *  it prints. */
+    static String run(String... args) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            Main.run(args);
+        } finally {
+            System.setOut(out);
+        }
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Writes CONTENTS to the file NAME beneath FILES_DIR, and returns
+     *  its path relative to the repository. */
+    static String write(String name, Object... contents) {
+        String path = FILES_DIR + "/" + name;
+        Utils.writeContents(new File(path), contents);
+        return path;
+    }
+
+    /** Deletes the repository made by init, if any, with its files, and
+     *  forgets what this process cached of it. */
+    static void delete() {
+        if (!made) {
+            return;
+        }
+        made = false;
+        RepoLock.release();
+        Transaction.abort();
+        Utils.deleteTree(Main.GITLET_DIRECTORY);
+        Utils.deleteTree(new File(FILES_DIR));
+        ObjectStore.clearCaches();
+        ObjectStore.refresh();
+    }
+
+    /** True iff init made a repository that delete has yet to remove. */
+    private static boolean made;
+}
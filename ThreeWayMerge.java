@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** A line-level three-way merge of two texts descended from a common
+ *  base, in the manner of diff3. Each side is matched with the base by
+ *  Diff; base lines matched on both sides split the texts into stable
+ *  runs, which all three share, and the chunks between them. A chunk
+ *  changed on one side only takes that side's lines, as does one changed
+ *  the same way on both; only a chunk changed differently on the two
+ *  sides is a conflict, written between markers after trimming the lines
+ *  the two sides share at its start and end.
+ *  @author Ethan Brown
+ */
+class ThreeWayMerge {
+
+    /** Marker before our side of a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    /** Marker between the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+    /** Start of the marker after their side of a conflict, followed by
+     *  the name of their branch. */
+    static final String THEIRS_MARKER = ">>>>>>> ";
+
+    /** Merges into BASE both the changes from BASE to OURS and those
+     *  from BASE to THEIRS, the latter made on the branch THEIRSNAME. */
+    ThreeWayMerge(byte[] base, byte[] ours, byte[] theirs,
+                  String theirsName) {
+        Diff.Interner interner = new Diff.Interner();
+        this.base = interner.split(base);
+        this.ours = interner.split(ours);
+        this.theirs = interner.split(theirs);
+        this.theirsName = theirsName;
+        oursMatch = Diff.match(this.base.ids(), this.ours.ids(),
+                               interner.size());
+        theirsMatch = Diff.match(this.base.ids(), this.theirs.ids(),
+                                 interner.size());
+        merge();
+    }
+
+    /** Returns the merged text. */
+    byte[] result() {
+        return out.toByteArray();
+    }
+
+    /** Returns the number of conflicts in the merged text. */
+    int conflicts() {
+        return conflicts;
+    }
+
+    /** Walks the three texts, alternating stable runs with the chunks
+     *  between them. */
+    private void merge() {
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (true) {
+            int start = i;
+            while (i < base.size() && oursMatch[i] == j
+                   && theirsMatch[i] == k) {
+                i += 1;
+                j += 1;
+                k += 1;
+            }
+            copy(base, start, i);
+            if (i == base.size() && j == ours.size()
+                && k == theirs.size()) {
+                return;
+            }
+            int i2 = i;
+            while (i2 < base.size()
+                   && (oursMatch[i2] == -1 || theirsMatch[i2] == -1)) {
+                i2 += 1;
+            }
+            int j2 = i2 < base.size() ? oursMatch[i2] : ours.size();
+            int k2 = i2 < base.size() ? theirsMatch[i2] : theirs.size();
+            chunk(i, i2, j, j2, k, k2);
+            i = i2;
+            j = j2;
+            k = k2;
+        }
+    }
+
+    /** Resolves the chunk of base lines [I, I2), our lines [J, J2) and
+     *  their lines [K, K2). */
+    private void chunk(int i, int i2, int j, int j2, int k, int k2) {
+        if (same(base, i, i2, ours, j, j2)) {
+            copy(theirs, k, k2);
+        } else if (same(base, i, i2, theirs, k, k2)
+                   || same(ours, j, j2, theirs, k, k2)) {
+            copy(ours, j, j2);
+        } else {
+            int head = 0;
+            while (j + head < j2 && k + head < k2
+                   && ours.id(j + head) == theirs.id(k + head)) {
+                head += 1;
+            }
+            int tail = 0;
+            while (j2 - tail > j + head && k2 - tail > k + head
+                   && ours.id(j2 - tail - 1) == theirs.id(k2 - tail - 1)) {
+                tail += 1;
+            }
+            copy(ours, j, j + head);
+            conflicts += 1;
+            write(OURS_MARKER);
+            side(ours, j + head, j2 - tail);
+            write(SEPARATOR);
+            side(theirs, k + head, k2 - tail);
+            write(THEIRS_MARKER + theirsName + "\n");
+            copy(ours, j2 - tail, j2);
+        }
+    }
+
+    /** Appends the marker MARKER to the result. */
+    private void write(String marker) {
+        out.writeBytes(marker.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns true iff lines [ALO, AHI) of A are lines [BLO, BHI) of
+     *  B. */
+    private static boolean same(Diff.Lines a, int aLo, int aHi,
+                                Diff.Lines b, int bLo, int bHi) {
+        if (aHi - aLo != bHi - bLo) {
+            return false;
+        }
+        for (int i = 0; i < aHi - aLo; i += 1) {
+            if (a.id(aLo + i) != b.id(bLo + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Appends lines [LO, HI) of TEXT to the result. */
+    private void copy(Diff.Lines text, int lo, int hi) {
+        int start = text.start(lo);
+        out.write(text.data(), start, text.start(hi) - start);
+    }
+
+    /** Appends lines [LO, HI) of TEXT to the result as one side of a
+     *  conflict, adding a newline after a last line that lacks one so
+     *  that the next marker starts a line. */
+    private void side(Diff.Lines text, int lo, int hi) {
+        copy(text, lo, hi);
+        int end = text.start(hi);
+        if (hi > lo && text.data()[end - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /** The lines of the base. */
+    private final Diff.Lines base;
+    /** The lines of our side. */
+    private final Diff.Lines ours;
+    /** The lines of their side. */
+    private final Diff.Lines theirs;
+    /** The branch of their side. */
+    private final String theirsName;
+    /** For each line of the base, its line in ours, or -1. */
+    private final int[] oursMatch;
+    /** For each line of the base, its line in theirs, or -1. */
+    private final int[] theirsMatch;
+    /** The merged text. */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    /** Number of conflicts so far. */
+    private int conflicts;
+}
@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the line diff and the three-way merge built on it.
+ *  @author Ethan Brown
+ */
+public class ThreeWayMergeTest {
+
+    /** Changes to different lines on the two sides merge cleanly. */
+    @Test
+    public void cleanMergeTest() {
+        ThreeWayMerge m = merge("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n",
+                                "a\nb\nc\nd\nE\n");
+        assertEquals("A\nb\nc\nd\nE\n", text(m));
+        assertEquals(0, m.conflicts());
+    }
+
+    /** A change made on one side only is taken from that side. */
+    @Test
+    public void oneSideTest() {
+        ThreeWayMerge m = merge("a\nb\nc\n", "a\nb\nc\n", "a\nB\nc\nd\n");
+        assertEquals("a\nB\nc\nd\n", text(m));
+        assertEquals(0, m.conflicts());
+        m = merge("a\nb\nc\n", "a\nc\n", "a\nb\nc\n");
+        assertEquals("a\nc\n", text(m));
+        assertEquals(0, m.conflicts());
+    }
+
+    /** The same change made on both sides is not a conflict. */
+    @Test
+    public void sameChangeTest() {
+        ThreeWayMerge m = merge("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n");
+        assertEquals("a\nB\nc\n", text(m));
+        assertEquals(0, m.conflicts());
+    }
+
+    /** Different changes to the same line conflict. */
+    @Test
+    public void conflictTest() {
+        ThreeWayMerge m = merge("a\nb\nc\n", "a\nB1\nc\n", "a\nB2\nc\n");
+        assertEquals("a\n<<<<<<< HEAD\nB1\n=======\nB2\n>>>>>>> other\nc\n",
+                     text(m));
+        assertEquals(1, m.conflicts());
+    }
+
+    /** Lines the two sides share at the start and end of a conflict are
+     *  kept outside its markers. */
+    @Test
+    public void trimmedConflictTest() {
+        ThreeWayMerge m = merge("a\nb\nc\n", "a\nX\nB1\nY\nc\n",
+                                "a\nX\nB2\nY\nc\n");
+        assertEquals("a\nX\n<<<<<<< HEAD\nB1\n=======\nB2\n>>>>>>> other\n"
+                     + "Y\nc\n", text(m));
+        assertEquals(1, m.conflicts());
+    }
+
+    /** A conflicting last line without a newline still leaves each marker
+     *  at the start of a line. */
+    @Test
+    public void missingNewlineTest() {
+        ThreeWayMerge m = merge("a\nb", "a\nb1", "a\nb2");
+        assertEquals("a\n<<<<<<< HEAD\nb1\n=======\nb2\n>>>>>>> other\n",
+                     text(m));
+        assertEquals(1, m.conflicts());
+        m = merge("a\nb", "a\nb", "a\nb\nc");
+        assertEquals("a\nb\nc", text(m));
+        assertEquals(0, m.conflicts());
+    }
+
+    /** A block moved on one side is taken from that side. */
+    @Test
+    public void movedBlockTest() {
+        String base = "a\nb\nc\nd\ne\nf\n";
+        String moved = "d\ne\nf\na\nb\nc\n";
+        ThreeWayMerge m = merge(base, moved, base);
+        assertEquals(moved, text(m));
+        assertEquals(0, m.conflicts());
+        m = merge(base, base, moved);
+        assertEquals(moved, text(m));
+        assertEquals(0, m.conflicts());
+        int[] match = match(base, moved);
+        checkMatch(lines(base), lines(moved), match);
+        assertEquals(MOVED, matched(match));
+    }
+
+    /** Diff matches only equal lines, in order, and all of two equal
+     *  texts. */
+    @Test
+    public void matchTest() {
+        Random random = new Random(SEED);
+        for (int t = 0; t < TRIALS; t += 1) {
+            String a = randomText(random);
+            String b = randomText(random);
+            checkMatch(lines(a), lines(b), match(a, b));
+            assertEquals(lines(a).length, matched(match(a, a)));
+        }
+    }
+
+    /** Returns the merge of BASE, OURS and THEIRS from branch "other". */
+    private static ThreeWayMerge merge(String base, String ours,
+                                       String theirs) {
+        return new ThreeWayMerge(bytes(base), bytes(ours), bytes(theirs),
+                                 "other");
+    }
+
+    /** Returns the result of M as a string. */
+    private static String text(ThreeWayMerge m) {
+        return new String(m.result(), StandardCharsets.UTF_8);
+    }
+
+    /** Returns Diff's match of the lines of A with those of B. */
+    private static int[] match(String a, String b) {
+        Diff.Interner interner = new Diff.Interner();
+        int[] aIds = interner.split(bytes(a)).ids();
+        int[] bIds = interner.split(bytes(b)).ids();
+        return Diff.match(aIds, bIds, interner.size());
+    }
+
+    /** Asserts that MATCH pairs lines of A only with equal lines of B,
+     *  in increasing order. */
+    private static void checkMatch(String[] a, String[] b, int[] match) {
+        assertEquals(a.length, match.length);
+        int last = -1;
+        for (int i = 0; i < a.length; i += 1) {
+            if (match[i] != -1) {
+                assertTrue(match[i] > last);
+                assertEquals(a[i], b[match[i]]);
+                last = match[i];
+            }
+        }
+    }
+
+    /** Returns the number of lines MATCH pairs. */
+    private static int matched(int[] match) {
+        int n = 0;
+        for (int j : match) {
+            if (j != -1) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Returns a text of up to TEXT_LINES lines drawn by RANDOM from
+     *  ALPHABET distinct ones. */
+    private static String randomText(Random random) {
+        StringBuilder s = new StringBuilder();
+        int n = random.nextInt(TEXT_LINES);
+        for (int i = 0; i < n; i += 1) {
+            s.append(random.nextInt(ALPHABET)).append('\n');
+        }
+        return s.toString();
+    }
+
+    /** Returns the lines of S. */
+    private static String[] lines(String s) {
+        return s.isEmpty() ? new String[0] : s.split("\n");
+    }
+
+    /** Returns S as UTF-8 bytes. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Lines left in place when a block of three moves past another. */
+    private static final int MOVED = 3;
+    /** Seed of the random texts compared. */
+    private static final long SEED = 42;
+    /** Number of random pairs of texts compared. */
+    private static final int TRIALS = 500;
+    /** Bound on the number of lines of a random text. */
+    private static final int TEXT_LINES = 40;
+    /** Number of distinct lines in random texts. */
+    private static final int ALPHABET = 6;
+}
@@ -0,0 +1,453 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/** The writes of one command, made durable together when it finishes.
+ *  Files are of two kinds. Objects, and files such as the commit graph
+ *  that only describe objects, are written as they are made, and
+ *  reported with created; nothing refers to them until the command
+ *  commits. The small files naming the repository's state, that is the
+ *  branches, HEAD, the index and the configuration, are instead written
+ *  with write and delete, which hold the new contents in memory, where
+ *  read sees them, until commit.
+ *
+ *  Commit first writes each new small file next to its target with the
+ *  suffix TMP_SUFFIX, then syncs these and every created file in a
+ *  single group: the syncs run at once on up to SYNC_THREADS threads,
+ *  and the file system folds them into one flush of its journal. Only
+ *  then are the new files renamed over their targets, so that no state
+ *  ever names an object that a crash could lose. Where more than one
+ *  file changes, the renames are first listed in JOURNAL, which is
+ *  synced on its own; should a crash interrupt the renames, recover
+ *  finishes them before the next command runs, so a commit updates the
+ *  branch and the index together or not at all. A last group syncs the
+ *  directories holding the renamed files, and the journal is deleted.
+ *  A command thus costs two or three flushes however many files it
+ *  writes.
+ *
+ *  The system property FSYNC_PROPERTY selects how files are synced:
+ *  GROUP, the default, as above; EACH, one file at a time as it is
+ *  written, as a command would without this class; or NONE, not at all,
+ *  which leaves the renames atomic but not durable.
+ *  @author Ethan Brown
+ */
+class Transaction {
+
+    /** Location of the journal within the .gitlet directory. */
+    static final String JOURNAL = ".gitlet/journal";
+    /** Suffix of the temporary files renamed over the files they
+     *  replace. */
+    static final String TMP_SUFFIX = ".tmp";
+    /** System property selecting how files are synced. */
+    static final String FSYNC_PROPERTY = "gitlet.fsync";
+    /** Value of FSYNC_PROPERTY syncing each batch of files as a group. */
+    static final String GROUP = "group";
+    /** Value of FSYNC_PROPERTY syncing each file as it is written. */
+    static final String EACH = "each";
+    /** Value of FSYNC_PROPERTY syncing nothing. */
+    static final String NONE = "none";
+    /** Most threads syncing one group of files. */
+    static final int SYNC_THREADS = 16;
+    /** Journal line renaming the temporary file of a path over it. */
+    private static final String RENAME = "R ";
+    /** Journal line deleting a path. */
+    private static final String DELETE = "D ";
+    /** Start of the last line of a journal, which holds the CRC-32C of
+     *  the lines before it in hexadecimal. */
+    private static final String END = "E ";
+
+    /** Starts the transaction of a new command holding the RepoLock,
+     *  first finishing any that a crash interrupted. */
+    static void begin() {
+        recover();
+        created.clear();
+        updates.clear();
+        snapshot = false;
+        active = true;
+    }
+
+    /** Starts the transaction of a read-only command that runs without
+     *  the RepoLock, alongside a writer. Its writes are dropped, since
+     *  they would race with the writer's, and the branches are read once,
+     *  at the start, so that they stay consistent with one another. */
+    static void beginSnapshot() {
+        created.clear();
+        updates.clear();
+        snapshot = true;
+        active = true;
+        Refs.freeze();
+    }
+
+    /** Lets a read-only command running on a snapshot write after all,
+     *  as status does to save later commands work, by taking the RepoLock
+     *  if no other process holds it. Returns true iff the command then
+     *  holds the lock, or runs outside a snapshot, and so may write; its
+     *  writes commit as any command's do. A writer may have committed
+     *  since the snapshot was taken, so the caller must check that what
+     *  it writes is still current. */
+    static boolean upgrade() {
+        if (!isSnapshot()) {
+            return true;
+        } else if (!RepoLock.tryAcquire()) {
+            return false;
+        }
+        recover();
+        snapshot = false;
+        Refs.thaw();
+        return true;
+    }
+
+    /** Returns true iff the current command runs without the RepoLock
+     *  and must not write to the repository. */
+    static boolean isSnapshot() {
+        return active && snapshot;
+    }
+
+    /** Records that FILE was just written, in full, under its final name,
+     *  so that it is synced before the command commits. Files written
+     *  outside a command are not synced. Safe to call from several
+     *  threads, as when add stores files in parallel. */
+    static void created(File file) {
+        if (!active || mode().equals(NONE)) {
+            return;
+        } else if (mode().equals(EACH)) {
+            sync(List.of(file, parent(file)));
+        } else {
+            created.add(file);
+        }
+    }
+
+    /** Replaces the contents of FILE with the concatenation of CONTENTS,
+     *  as for Utils.writeContents, when the command commits. */
+    static void write(File file, Object... contents) {
+        if (!active) {
+            Utils.writeAtomically(file, contents);
+            return;
+        }
+        int size = 0;
+        for (Object obj : contents) {
+            size += bytes(obj).length;
+        }
+        byte[] data = new byte[size];
+        int pos = 0;
+        for (Object obj : contents) {
+            byte[] b = bytes(obj);
+            System.arraycopy(b, 0, data, pos, b.length);
+            pos += b.length;
+        }
+        updates.put(file, data);
+    }
+
+    /** Deletes FILE when the command commits. */
+    static void delete(File file) {
+        if (!active) {
+            file.delete();
+            return;
+        }
+        updates.put(file, null);
+    }
+
+    /** Returns the contents of FILE as this transaction leaves it, or
+     *  null if it will not exist. */
+    static byte[] read(File file) {
+        if (updates.containsKey(file)) {
+            return updates.get(file);
+        }
+        return file.isFile() ? Utils.readContents(file) : null;
+    }
+
+    /** Returns true iff FILE will exist once this transaction commits. */
+    static boolean exists(File file) {
+        if (updates.containsKey(file)) {
+            return updates.get(file) != null;
+        }
+        return file.isFile();
+    }
+
+    /** Returns true iff this transaction changes FILE. */
+    static boolean changes(File file) {
+        return updates.containsKey(file);
+    }
+
+    /** As for Utils.plainFilenamesIn(DIR), but listing the plain files
+     *  that DIR will hold once this transaction commits. */
+    static List<String> plainFilenamesIn(String dir) {
+        TreeSet<String> names = new TreeSet<>();
+        List<String> onDisk = Utils.plainFilenamesIn(dir);
+        if (onDisk != null) {
+            names.addAll(onDisk);
+        }
+        File d = new File(dir);
+        for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+            File f = e.getKey();
+            if (d.equals(f.getParentFile())) {
+                if (e.getValue() == null) {
+                    names.remove(f.getName());
+                } else {
+                    names.add(f.getName());
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Flushes the file open as CHANNEL to disk at once, unless syncing
+     *  is off. Files changed in place call this between writes that must
+     *  reach the disk in order. */
+    static void flush(FileChannel channel) throws IOException {
+        if (!mode().equals(NONE)) {
+            channel.force(false);
+        }
+    }
+
+    /** Syncs every file created so far. Callers that are about to delete
+     *  the only other copy of some data call this first. */
+    static void barrier() {
+        sync(withParents(takeCreated()));
+    }
+
+    /** Makes every write of this transaction durable, as described
+     *  above, and ends it. */
+    static void commit() {
+        if (!active) {
+            return;
+        } else if (snapshot) {
+            abort();
+            return;
+        }
+        active = false;
+        try {
+            LinkedHashSet<File> group = takeCreated();
+            for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+                if (e.getValue() != null) {
+                    File tmp = tmp(e.getKey());
+                    Utils.writeContents(tmp, e.getValue());
+                    group.add(tmp);
+                }
+            }
+            if (mode().equals(EACH)) {
+                for (File f : group) {
+                    sync(List.of(f, parent(f)));
+                }
+            } else {
+                sync(withParents(group));
+            }
+            if (updates.isEmpty()) {
+                return;
+            }
+            File journal = new File(JOURNAL);
+            if (updates.size() > 1) {
+                writeJournal(journal);
+            }
+            LinkedHashMap<File, Boolean> renames = new LinkedHashMap<>();
+            for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+                renames.put(e.getKey(), e.getValue() != null);
+            }
+            apply(renames);
+            if (journal.exists()) {
+                journal.delete();
+            }
+        } finally {
+            created.clear();
+            updates.clear();
+        }
+    }
+
+    /** Ends this transaction without applying the writes it holds. Files
+     *  already created are left in place, unreferenced. */
+    static void abort() {
+        active = false;
+        created.clear();
+        updates.clear();
+        Refs.thaw();
+    }
+
+    /** Finishes the renames listed in the journal, if one was completely
+     *  written before a crash, and deletes it. Renames whose temporary
+     *  file is gone were already made. */
+    static void recover() {
+        File journal = new File(JOURNAL);
+        if (!journal.isFile()) {
+            return;
+        }
+        String text = Utils.readContentsAsString(journal);
+        int end = text.lastIndexOf(END);
+        if (end != -1 && text.endsWith("\n")
+                && text.substring(end + END.length(), text.length() - 1)
+                       .equals(checksum(text.substring(0, end)))) {
+            LinkedHashMap<File, Boolean> renames = new LinkedHashMap<>();
+            for (String line : text.substring(0, end).split("\n")) {
+                File f = new File(line.substring(RENAME.length()));
+                if (line.startsWith(DELETE)) {
+                    renames.put(f, false);
+                } else if (tmp(f).exists()) {
+                    renames.put(f, true);
+                }
+            }
+            apply(renames);
+        }
+        journal.delete();
+    }
+
+    /** Writes to JOURNAL the renames and deletions that commit applies,
+     *  and syncs it. */
+    private static void writeJournal(File journal) {
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+            lines.append(e.getValue() == null ? DELETE : RENAME)
+                .append(e.getKey().getPath()).append('\n');
+        }
+        String body = lines.toString();
+        Utils.writeContents(journal, body, END + checksum(body) + "\n");
+        if (!mode().equals(NONE)) {
+            sync(List.of(journal, parent(journal)));
+        }
+    }
+
+    /** For each path in RENAMES, renames its temporary file over it if it
+     *  maps to true, and deletes it otherwise, then syncs the directories
+     *  holding the paths, except those among the paths deleted. */
+    private static void apply(Map<File, Boolean> renames) {
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (Map.Entry<File, Boolean> e : renames.entrySet()) {
+            File f = e.getKey();
+            File tmp = tmp(f);
+            if (e.getValue()) {
+                if (!tmp.renameTo(f)) {
+                    throw new IllegalArgumentException("cannot rename "
+                                                       + tmp);
+                }
+            } else {
+                f.delete();
+            }
+            dirs.add(parent(f));
+        }
+        dirs.removeIf(d -> !d.isDirectory());
+        if (!mode().equals(NONE)) {
+            sync(dirs);
+        }
+    }
+
+    /** Returns the files created and not yet synced, and forgets
+     *  them. */
+    private static LinkedHashSet<File> takeCreated() {
+        synchronized (created) {
+            LinkedHashSet<File> result = new LinkedHashSet<>(created);
+            created.clear();
+            return result;
+        }
+    }
+
+    /** Returns FILES followed by the directories holding them. */
+    private static LinkedHashSet<File> withParents(Collection<File> files) {
+        LinkedHashSet<File> result = new LinkedHashSet<>(files);
+        for (File f : files) {
+            result.add(parent(f));
+        }
+        return result;
+    }
+
+    /** Flushes each of FILES, files or directories, to disk, all at once
+     *  on up to SYNC_THREADS threads, and returns when all are done.
+     *  Does nothing if syncing is off. */
+    private static void sync(Collection<File> files) {
+        if (files.isEmpty() || mode().equals(NONE)) {
+            return;
+        }
+        if (files.size() == 1) {
+            force(files.iterator().next());
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(SYNC_THREADS, files.size()));
+        try {
+            ArrayList<Future<?>> done = new ArrayList<>();
+            for (File f : files) {
+                done.add(pool.submit(() -> force(f)));
+            }
+            for (Future<?> d : done) {
+                d.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Flushes FILE, a file or directory, to disk. File systems that
+     *  cannot open a directory for this are left to order its entries
+     *  themselves. */
+    private static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                     StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the temporary file holding the new contents of FILE. */
+    private static File tmp(File file) {
+        return new File(file.getPath() + TMP_SUFFIX);
+    }
+
+    /** Returns the directory holding FILE. */
+    private static File parent(File file) {
+        return file.getAbsoluteFile().getParentFile();
+    }
+
+    /** Returns OBJ, a String or byte array, as bytes. */
+    private static byte[] bytes(Object obj) {
+        if (obj instanceof byte[]) {
+            return (byte[]) obj;
+        }
+        return ((String) obj).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the CRC-32C of TEXT in hexadecimal. */
+    private static String checksum(String text) {
+        CRC32C crc = new CRC32C();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /** Returns the value of FSYNC_PROPERTY. */
+    private static String mode() {
+        return System.getProperty(FSYNC_PROPERTY, GROUP);
+    }
+
+    /** True while a command's transaction is open. */
+    private static boolean active;
+    /** True if the open transaction is that of a read-only command
+     *  running without the RepoLock. */
+    private static boolean snapshot;
+    /** Files created by this transaction that are not yet synced, added
+     *  to by any thread. */
+    private static final Set<File> created =
+        Collections.synchronizedSet(new LinkedHashSet<>());
+    /** New contents of the files this transaction changes, in the order
+     *  first changed, each null if the file is to be deleted. */
+    private static final LinkedHashMap<File, byte[]> updates =
+        new LinkedHashMap<>();
+}
@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Transaction, and of the recovery of commits interrupted
+ *  while renaming their files into place.
+ *  @author Ethan Brown
+ */
+public class TransactionTest {
+
+    /** Removes the repository of the last test. */
+    @After
+    public void cleanUp() {
+        TestRepo.delete();
+    }
+
+    /** Writes are held until commit, which renames them into place and
+     *  removes its journal. */
+    @Test
+    public void commitTest() {
+        TestRepo.init();
+        File a = new File(TestRepo.write("a", "old a"));
+        File b = new File(TestRepo.write("b", "old b"));
+        File c = new File(TestRepo.FILES_DIR, "c");
+        Transaction.begin();
+        Transaction.write(a, "new a");
+        Transaction.delete(b);
+        Transaction.write(c, "new ", "c");
+        assertEquals("old a", Utils.readContentsAsString(a));
+        assertTrue(b.isFile());
+        assertFalse(Transaction.exists(b));
+        assertArrayEquals("new c".getBytes(StandardCharsets.UTF_8),
+                          Transaction.read(c));
+        Transaction.commit();
+        assertEquals("new a", Utils.readContentsAsString(a));
+        assertFalse(b.exists());
+        assertEquals("new c", Utils.readContentsAsString(c));
+        assertFalse(new File(Transaction.JOURNAL).exists());
+        assertFalse(tmp(a).exists());
+        assertFalse(tmp(c).exists());
+    }
+
+    /** An aborted transaction writes nothing. */
+    @Test
+    public void abortTest() {
+        TestRepo.init();
+        File a = new File(TestRepo.write("a", "old a"));
+        Transaction.begin();
+        Transaction.write(a, "new a");
+        Transaction.abort();
+        Transaction.commit();
+        assertEquals("old a", Utils.readContentsAsString(a));
+    }
+
+    /** The next command finishes a commit interrupted after it wrote its
+     *  journal and renamed some of its files, making the rest of its
+     *  renames and deletions. */
+    @Test
+    public void interruptedCommitTest() {
+        TestRepo.init();
+        String head = Refs.read("master");
+        File branch = new File(Repository.BRANCHES + "other");
+        File done = new File(TestRepo.write("done", "new done"));
+        File doomed = new File(TestRepo.write("doomed", "doomed"));
+        Utils.writeContents(tmp(branch), head);
+        writeJournal("R " + branch.getPath() + "\n"
+                     + "R " + done.getPath() + "\n"
+                     + "D " + doomed.getPath() + "\n");
+        String status = TestRepo.run("status");
+        assertTrue(status,
+                   status.startsWith("=== Branches ===\n*master\nother\n"));
+        assertEquals(head, Refs.read("other"));
+        assertFalse(tmp(branch).exists());
+        assertEquals("new done", Utils.readContentsAsString(done));
+        assertFalse(doomed.exists());
+        assertFalse(new File(Transaction.JOURNAL).exists());
+    }
+
+    /** A journal cut short by a crash while it was written is discarded,
+     *  since the commit it belongs to had renamed nothing yet. */
+    @Test
+    public void tornJournalTest() {
+        TestRepo.init();
+        File a = new File(TestRepo.write("a", "old a"));
+        File b = new File(TestRepo.write("b", "old b"));
+        Utils.writeContents(tmp(a), "new a");
+        Utils.writeContents(new File(Transaction.JOURNAL),
+                            "R " + a.getPath() + "\nD " + b.getPath());
+        Transaction.recover();
+        assertFalse(new File(Transaction.JOURNAL).exists());
+        assertEquals("old a", Utils.readContentsAsString(a));
+        assertTrue(b.isFile());
+        String body = "R " + a.getPath() + "\n";
+        Utils.writeContents(new File(Transaction.JOURNAL), body,
+                            "E " + checksum(body + "x") + "\n");
+        Transaction.recover();
+        assertFalse(new File(Transaction.JOURNAL).exists());
+        assertEquals("old a", Utils.readContentsAsString(a));
+    }
+
+    /** Writes a complete journal listing the renames and deletions in
+     *  BODY, as Transaction does. */
+    private static void writeJournal(String body) {
+        Utils.writeContents(new File(Transaction.JOURNAL), body,
+                            "E " + checksum(body) + "\n");
+    }
+
+    /** Returns the CRC-32C of TEXT in hexadecimal, as ends a journal. */
+    private static String checksum(String text) {
+        CRC32C crc = new CRC32C();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /** Returns the temporary file holding the new contents of FILE. */
+    private static File tmp(File file) {
+        return new File(file.getPath() + Transaction.TMP_SUFFIX);
+    }
+}
@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** One directory of a commit: the blob ID of each file directly inside
+ *  it and the tree ID of each subdirectory. Subdirectory names carry a
+ *  trailing '/', which keeps them apart from files and sorts them among
+ *  the files as if by their path. A tree is stored as an object of type
+ *  TREE named by the SHA-1 of its encoding: the byte MAGIC, the FORMAT
+ *  version, the number of entries as an int, then, in order of name,
+ *  each name as a short length and UTF-8 bytes followed by its ID as
+ *  ID_BYTES bytes. Equal directories thus have equal IDs, commits share
+ *  every directory they do not change, and two commits can be compared
+ *  without looking inside the directories they share.
+ *  @author Ethan Brown
+ */
+class Tree {
+
+    /** First byte of an encoded tree. */
+    static final byte MAGIC = 'T';
+    /** Version of the tree encoding. */
+    static final byte FORMAT = 1;
+    /** Byte length of an ID within an encoded tree. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Byte length of the fixed part of an encoded tree. */
+    private static final int FIXED_SIZE = 2 + Integer.BYTES;
+    /** Mask extracting an unsigned short. */
+    private static final int SHORT_MASK = 0xffff;
+
+    /** An empty directory. */
+    Tree() {
+        entries = new TreeMap<>();
+    }
+
+    /** A directory holding ENTRIES, keyed by name, subdirectory names
+     *  ending in '/'. */
+    Tree(TreeMap<String, String> entries) {
+        this.entries = entries;
+    }
+
+    /** Returns the tree with ID, or an empty tree if ID is null. */
+    static Tree read(String id) {
+        if (id == null) {
+            return new Tree();
+        }
+        return decode(ObjectStore.readBytes(id));
+    }
+
+    /** Stores this tree unless it is already stored, and returns its
+     *  ID. */
+    String write() {
+        byte[] encoded = encode();
+        String id = Utils.sha1((Object) encoded);
+        if (!ObjectStore.contains(id)) {
+            ObjectStore.writeEncoded(id, Codec.encode(Codec.current(),
+                                                      ObjectStore.TREE,
+                                                      encoded));
+        }
+        return id;
+    }
+
+    /** Returns the encoding of this tree. */
+    byte[] encode() {
+        byte[][] names = new byte[entries.size()][];
+        int size = FIXED_SIZE;
+        int i = 0;
+        for (String name : entries.keySet()) {
+            names[i] = name.getBytes(StandardCharsets.UTF_8);
+            size += Short.BYTES + names[i].length + ID_BYTES;
+            i += 1;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(MAGIC).put(FORMAT).putInt(names.length);
+        i = 0;
+        for (String id : entries.values()) {
+            out.putShort((short) names[i].length).put(names[i]);
+            out.put(Utils.fromHex(id));
+            i += 1;
+        }
+        return out.array();
+    }
+
+    /** Returns the tree encoded as DATA. */
+    static Tree decode(byte[] data) {
+        if (data.length < FIXED_SIZE || data[0] != MAGIC
+                || data[1] != FORMAT) {
+            throw new GitletException("Unknown tree format.");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, 2, data.length - 2);
+        int count = in.getInt();
+        TreeMap<String, String> entries = new TreeMap<>();
+        for (int i = 0; i < count; i += 1) {
+            int length = in.getShort() & SHORT_MASK;
+            String name = new String(data, in.position(), length,
+                                     StandardCharsets.UTF_8);
+            String id = Utils.toHex(data, in.position() + length, ID_BYTES);
+            in.position(in.position() + length + ID_BYTES);
+            entries.put(name, id);
+        }
+        return new Tree(entries);
+    }
+
+    /** Returns the entries of this tree, keyed by name, subdirectory
+     *  names ending in '/'. */
+    TreeMap<String, String> entries() {
+        return entries;
+    }
+
+    /** Applies CHANGES, a map from paths relative to the tree with ID to
+     *  blob IDs, or to null for files to remove, to that tree. ID may be
+     *  null for an empty tree. Stores the trees on the paths that change,
+     *  and only those, and returns the ID of the new tree, or null if it
+     *  is empty. */
+    static String update(String id, SortedMap<String, String> changes) {
+        Tree tree = read(id);
+        TreeMap<String, TreeMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash != -1) {
+                below.computeIfAbsent(path.substring(0, slash + 1),
+                                      k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                tree.entries.remove(path);
+            } else {
+                tree.entries.put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> e
+                 : below.entrySet()) {
+            String sub = update(tree.entries.get(e.getKey()), e.getValue());
+            if (sub == null) {
+                tree.entries.remove(e.getKey());
+            } else {
+                tree.entries.put(e.getKey(), sub);
+            }
+        }
+        return tree.entries.isEmpty() ? null : tree.write();
+    }
+
+    /** Adds to FILES the blob ID of every file beneath the tree with ID,
+     *  keyed by its path, which starts with PREFIX. */
+    static void flatten(String id, String prefix, Map<String, String> files) {
+        for (Map.Entry<String, String> e : read(id).entries.entrySet()) {
+            String name = e.getKey();
+            if (name.endsWith("/")) {
+                flatten(e.getValue(), prefix + name, files);
+            } else {
+                files.put(prefix + name, e.getValue());
+            }
+        }
+    }
+
+    /** Returns the files that differ between the trees with IDs FROM and
+     *  TO, either of which may be null for an empty tree, keyed by path.
+     *  Each maps to its blob ID in FROM and in TO, null where it is
+     *  absent. Subdirectories with equal IDs are skipped unread. */
+    static TreeMap<String, String[]> diff(String from, String to) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        diff(from, to, "", result);
+        return result;
+    }
+
+    /** Adds to RESULT, as for diff(FROM, TO), the files that differ
+     *  between the trees with IDs FROM and TO, beneath PREFIX. */
+    private static void diff(String from, String to, String prefix,
+                             TreeMap<String, String[]> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        TreeMap<String, String> a = read(from).entries;
+        TreeMap<String, String> b = read(to).entries;
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            String x = a.get(name);
+            String y = b.get(name);
+            if (name.endsWith("/")) {
+                diff(x, y, prefix + name, result);
+            } else if (x == null || !x.equals(y)) {
+                result.put(prefix + name, new String[] { x, y });
+            }
+        }
+    }
+
+    /** Entries of this tree, keyed by name. */
+    private final TreeMap<String, String> entries;
+}
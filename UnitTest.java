@@ -12,7 +12,18 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class,
+                                      ThreeWayMergeTest.class,
+                                      DeltaTest.class,
+                                      LzfCodecTest.class,
+                                      ChunkerTest.class,
+                                      RepositoryTest.class,
+                                      RepoLockTest.class,
+                                      TransactionTest.class,
+                                      StagingIndexTest.class,
+                                      CommitGraphTest.class,
+                                      IdTableTest.class,
+                                      MessageIndexTest.class));
     }
 
     /** A dummy test to avoid complaint. */